@@ -1,3 +1,4 @@
+import hk.cli.BatchRunner;
 import hk.window.*;
 
 import java.awt.*;
@@ -6,6 +7,13 @@ public class Main
 {
 	public static void main(String[] args)
 	{
+		// Commands are run without GUI
+		if(args.length > 0)
+		{
+			BatchRunner.main(args);
+			return;
+		}
+
 		EventQueue.invokeLater(new Runnable()
 		{
 			@Override
@@ -0,0 +1,391 @@
+package hk.bench;
+
+import hk.HoshenKopelman;
+import hk.Lattice;
+import hk.Stencil;
+import hk.StencilHoshenKopelman;
+import hk.cell.*;
+import hk.experiment.*;
+import hk.util.LabelMarker;
+import hk.util.Pair;
+import hk.util.RandomSource;
+import hk.util.SplitMix64;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Benchmarks of clusterization and experiment hot paths.
+ * Each benchmark is run for all lattice sizes and chances,
+ * throughput and allocated bytes per operation are reported.
+ * Usage: Benchmarks [--sizes 256,1024] [--chances 0.3,0.5927] [--warmup 5]
+ * [--iterations 10] [--filter name].
+ */
+public class Benchmarks
+{
+	/**
+	 * Consumer of benchmark results, which prevents removal of dead code.
+	 */
+	private static volatile long sink;
+
+	/**
+	 * Bytes allocated by the measurement itself.
+	 */
+	private static long allocationOverhead = 0;
+
+	/**
+	 * Benchmarked operation on the lattice with the given size and chance.
+	 */
+	private static abstract class Benchmark
+	{
+		private final String name;
+		protected int size;
+		protected double chance;
+
+		Benchmark(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Prepare the state for all invocations.
+		 */
+		void setUp(int size, double chance)
+		{
+			this.size = size;
+			this.chance = chance;
+		}
+
+		/**
+		 * Prepare the state for the next invocation. It isn't measured.
+		 */
+		void prepare(){
+		}
+
+		/**
+		 * Measured operation.
+		 * @return Any value of the result.
+		 */
+		abstract long run();
+	}
+
+	private static double[][] randomField(int size, long seed)
+	{
+		Random gen = new Random(seed);
+		double[][] cells = new double[size][size];
+		for(double[] row : cells)
+		{
+			for(int j = 0 ; j < size ; j++)
+			{
+				row[j] = gen.nextDouble();
+			}
+		}
+		return cells;
+	}
+
+	private static List<Benchmark> createBenchmarks()
+	{
+		List<Benchmark> benchmarks = new ArrayList<>();
+
+		benchmarks.add(new Benchmark("HoshenKopelman.compute")
+		{
+			Lattice lattice = new Lattice();
+			HoshenKopelman hk = new HoshenKopelman();
+			CellRange result;
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				lattice.generateNewLattice(randomField(size, 1), chance);
+				result = new CellRange(lattice.getResultLattice());
+			}
+
+			@Override
+			void prepare(){
+				hk.getLabels().clear();
+			}
+
+			@Override
+			long run()
+			{
+				hk.compute(lattice.getInitialLattice(), result);
+				return hk.getLabels().getCount();
+			}
+		});
+
+		benchmarks.add(new Benchmark("HoshenKopelman.relabel")
+		{
+			Lattice lattice = new Lattice();
+			HoshenKopelman hk = new HoshenKopelman();
+			CellRange result;
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				lattice.generateNewLattice(randomField(size, 1), chance);
+				result = new CellRange(lattice.getResultLattice());
+			}
+
+			@Override
+			void prepare()
+			{
+				hk.getLabels().clear();
+				hk.compute(lattice.getInitialLattice(), result);
+			}
+
+			@Override
+			long run(){
+				return hk.relabel(result);
+			}
+		});
+
+		benchmarks.add(new Benchmark("StencilHoshenKopelman.compute (3D)")
+		{
+			StencilHoshenKopelman hk;
+			long[] occupied;
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+
+				// Cube with the same count of sites as the square lattice
+				int side = (int)Math.round(Math.cbrt((double)size * size));
+				hk = new StencilHoshenKopelman(Stencil.NEAREST, side, side, side);
+				occupied = hk.newOccupancy();
+				Random gen = new Random(1);
+				for(int index = 0 ; index < hk.getSize() ; index++)
+				{
+					if(gen.nextDouble() < chance) occupied[index >>> 6] |= 1L << index;
+				}
+			}
+
+			@Override
+			long run(){
+				return hk.compute(occupied);
+			}
+		});
+
+		benchmarks.add(new Benchmark("TwoDimensionalPercolation.checkEdges")
+		{
+			Lattice lattice = new Lattice();
+			LabelMarker marker = new LabelMarker();
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				lattice.generateNewLattice(randomField(size, 1), chance);
+				lattice.clusterize();
+			}
+
+			@Override
+			long run(){
+				return TwoDimensionalPercolation.checkEdges(lattice.getResultLattice(),
+						lattice.getClusterCount(), marker).ordinal();
+			}
+		});
+
+		benchmarks.add(new Benchmark("Lattice.generateNewLattice")
+		{
+			Lattice lattice = new Lattice();
+			double[][] cells;
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				cells = randomField(size, 1);
+			}
+
+			@Override
+			long run()
+			{
+				lattice.generateNewLattice(cells, chance);
+				return lattice.getInitialLattice().getWords()[0];
+			}
+		});
+
+		benchmarks.add(new Benchmark("Lattice.generateNewLattice (16-bit field)")
+		{
+			Lattice lattice = new Lattice();
+			ThresholdField field;
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				field = new ThresholdField(size, size, 16);
+				field.fill(new SplitMix64(1));
+			}
+
+			@Override
+			long run()
+			{
+				lattice.generateNewLattice(field, chance);
+				return lattice.getInitialLattice().getWords()[0];
+			}
+		});
+
+		benchmarks.add(new Benchmark("Lattice.generateNewLattice (hashed field)")
+		{
+			Lattice lattice = new Lattice();
+			HashedField field;
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				field = new HashedField(size, size, 1);
+			}
+
+			@Override
+			long run()
+			{
+				lattice.generateNewLattice(field, chance);
+				return lattice.getInitialLattice().getWords()[0];
+			}
+		});
+
+		benchmarks.add(new Benchmark("Random field (double[][], java.util.Random)")
+		{
+			@Override
+			long run(){
+				return (long)randomField(size, 1)[0][0];
+			}
+		});
+
+		benchmarks.add(new Benchmark("Random field (32-bit thresholds, SplitMix64)")
+		{
+			ThresholdField field;
+			RandomSource gen = new SplitMix64(1);
+
+			@Override
+			void setUp(int size, double chance)
+			{
+				super.setUp(size, chance);
+				field = new ThresholdField(size, size, 32);
+			}
+
+			@Override
+			long run()
+			{
+				field.fill(gen);
+				return (long)field.get(0, 0);
+			}
+		});
+
+		benchmarks.add(new Benchmark("ExperimentOnPercolation.run")
+		{
+			@Override
+			long run()
+			{
+				// One sample with ten chances around the given one
+				ExperimentOnPercolation experiment = new ExperimentOnPercolation(new Pair<>(size, size),
+						new Pair<>(Math.max(0.0, chance - 0.05), Math.min(1.0, chance + 0.05)), 0.01);
+				experiment.setSeed(1);
+				experiment.run();
+				return experiment.getStatistic().getCount(TwoDimensionalPercolation.NONE);
+			}
+		});
+
+		return benchmarks;
+	}
+
+	public static void main(String[] args)
+	{
+		int[] sizes = {256, 1024, 4096};
+		double[] chances = {0.3, 0.5927, 0.8};
+		int warmup = 5, iterations = 10;
+		String filter = "";
+
+		for(int i = 0 ; i + 1 < args.length ; i += 2)
+		{
+			switch(args[i])
+			{
+				case "--sizes":
+					String[] values = args[i + 1].split(",");
+					sizes = new int[values.length];
+					for(int k = 0 ; k < values.length ; k++) sizes[k] = Integer.parseInt(values[k]);
+					break;
+				case "--chances":
+					values = args[i + 1].split(",");
+					chances = new double[values.length];
+					for(int k = 0 ; k < values.length ; k++) chances[k] = Double.parseDouble(values[k]);
+					break;
+				case "--warmup":
+					warmup = Integer.parseInt(args[i + 1]);
+					break;
+				case "--iterations":
+					iterations = Integer.parseInt(args[i + 1]);
+					break;
+				case "--filter":
+					filter = args[i + 1];
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		allocationOverhead = measure(new Benchmark("Empty")
+		{
+			@Override
+			long run(){
+				return 0;
+			}
+		}, 16)[1] / 16;
+
+		System.out.printf("%-38s %6s %7s %12s %12s %14s%n",
+				"Benchmark", "Size", "Chance", "ops/s", "ms/op", "bytes/op");
+		for(Benchmark benchmark : createBenchmarks())
+		{
+			if(!benchmark.name.contains(filter)) continue;
+			for(int size : sizes)
+			{
+				for(double chance : chances)
+				{
+					benchmark.setUp(size, chance);
+					measure(benchmark, warmup);
+					long[] result = measure(benchmark, iterations);
+					double msPerOp = result[0] / 1e6 / iterations;
+					System.out.printf("%-38s %6d %7.4f %12.2f %12.3f %14s%n", benchmark.name, size, chance,
+							1000.0 / msPerOp, msPerOp,
+							(result[1] < 0) ? "n/a" : Long.toString(result[1] / iterations));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run the benchmark.
+	 * @return Elapsed nanoseconds and allocated bytes or -1, if allocations can't be measured.
+	 */
+	private static long[] measure(Benchmark benchmark, int iterations)
+	{
+		long elapsed = 0, allocated = 0, start, startBytes;
+		for(int i = 0 ; i < iterations ; i++)
+		{
+			benchmark.prepare();
+			startBytes = allocatedBytes();
+			start = System.nanoTime();
+			sink += benchmark.run();
+			elapsed += System.nanoTime() - start;
+			allocated += Math.max(0, allocatedBytes() - startBytes - allocationOverhead);
+		}
+		return new long[]{elapsed, (allocatedBytes() < 0) ? -1 : allocated};
+	}
+
+	/**
+	 * @return Bytes allocated by the current thread or -1, if the JVM can't count them.
+	 */
+	private static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,214 @@
+package hk;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of cluster sizes: count of clusters, the largest one, histogram n(s)
+ * and the mean cluster size, which excludes spanning clusters.
+ * The exact histogram counts small clusters, which don't span the lattice, so its size doesn't depend on the lattice.
+ * The histogram with logarithmic bins counts all sizes, bin b has sizes from 2^b to 2^(b + 1) - 1.
+ */
+public class ClusterStatistics
+{
+	/**
+	 * Clusters of this size and larger aren't counted in the exact histogram, only in logarithmic bins.
+	 */
+	public static final int HISTOGRAM_LIMIT = 1 << 12;
+	/**
+	 * Count of logarithmic bins, enough for any size.
+	 */
+	public static final int SIZE_BINS = 64;
+
+	private long count = 0;
+	private long occupied = 0;
+	private long largest = 0;
+	private long[] histogram = new long[64];
+	private int maxHistogramSize = 0;
+	private long overflow = 0;
+	private final long[] sizeBins = new long[SIZE_BINS];
+	private long finiteSites = 0;
+	private double finiteSquares = 0.0;
+
+	/**
+	 * Count the cluster.
+	 * @param size count of sites of the cluster.
+	 */
+	public void add(long size)
+	{
+		add(size, false);
+	}
+
+	/**
+	 * Count the cluster.
+	 * @param size count of sites of the cluster.
+	 * @param isSpanning true, if the cluster connects opposite edges of the lattice.
+	 */
+	public void add(long size, boolean isSpanning)
+	{
+		if(!isSpanning)
+		{
+			finiteSites += size;
+			finiteSquares += (double)size * size;
+		}
+
+		++count;
+		occupied += size;
+		if(size > largest) largest = size;
+		if(size > 0) ++sizeBins[getSizeBin(size)];
+
+		if(isSpanning) return;
+		if(size < HISTOGRAM_LIMIT)
+		{
+			int index = (int)size;
+			if(index >= histogram.length)
+			{
+				histogram = Arrays.copyOf(histogram,
+						(int)Math.min(HISTOGRAM_LIMIT, Math.max(2L * histogram.length, index + 1L)));
+			}
+			++histogram[index];
+			if(index > maxHistogramSize) maxHistogramSize = index;
+		}
+		else
+		{
+			++overflow;
+		}
+	}
+
+	/**
+	 * Add clusters of other statistics to this one.
+	 * @param other merged statistics.
+	 */
+	public void merge(ClusterStatistics other)
+	{
+		count += other.count;
+		occupied += other.occupied;
+		finiteSites += other.finiteSites;
+		finiteSquares += other.finiteSquares;
+		if(other.largest > largest) largest = other.largest;
+		overflow += other.overflow;
+		for(int b = 0 ; b < SIZE_BINS ; b++)
+		{
+			sizeBins[b] += other.sizeBins[b];
+		}
+
+		if(other.maxHistogramSize >= histogram.length)
+		{
+			histogram = Arrays.copyOf(histogram, other.maxHistogramSize + 1);
+		}
+		for(int s = 1 ; s <= other.maxHistogramSize ; s++)
+		{
+			histogram[s] += other.histogram[s];
+		}
+		if(other.maxHistogramSize > maxHistogramSize) maxHistogramSize = other.maxHistogramSize;
+	}
+
+	public void clear()
+	{
+		count = occupied = largest = overflow = finiteSites = 0;
+		finiteSquares = 0.0;
+		Arrays.fill(histogram, 0, maxHistogramSize + 1, 0L);
+		maxHistogramSize = 0;
+		Arrays.fill(sizeBins, 0L);
+	}
+
+	/**
+	 * @return Count of clusters.
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	/**
+	 * @return Count of occupied sites.
+	 */
+	public long getOccupied(){
+		return occupied;
+	}
+
+	/**
+	 * @return Size of the largest cluster.
+	 */
+	public long getLargest(){
+		return largest;
+	}
+
+	/**
+	 * @return Average count of sites in a cluster.
+	 */
+	public double getAverageSize(){
+		return (count == 0) ? 0.0 : (double)occupied / count;
+	}
+
+	/**
+	 * Mean size of the cluster, which contains a random occupied site:
+	 * sum of s^2 over sum of s for clusters, which don't span the lattice.
+	 * @return Mean cluster size.
+	 */
+	public double getMeanClusterSize(){
+		return (finiteSites == 0) ? 0.0 : finiteSquares / finiteSites;
+	}
+
+	/**
+	 * @return Count of sites of clusters, which don't span the lattice.
+	 */
+	public long getFiniteSites(){
+		return finiteSites;
+	}
+
+	/**
+	 * @return Second moment of sizes of clusters, which don't span the lattice.
+	 */
+	public double getSecondMoment(){
+		return finiteSquares;
+	}
+
+	/**
+	 * @param size size of clusters less than {@link #HISTOGRAM_LIMIT}.
+	 * @return Count of clusters of the size, which don't span the lattice.
+	 */
+	public long getCountOfSize(int size){
+		return (size < 0 || size > maxHistogramSize) ? 0L : histogram[size];
+	}
+
+	/**
+	 * @return Size of the largest cluster in the histogram.
+	 */
+	public int getMaxHistogramSize(){
+		return maxHistogramSize;
+	}
+
+	/**
+	 * @param size positive size of the cluster.
+	 * @return Number of the logarithmic bin of the size.
+	 */
+	public static int getSizeBin(long size){
+		return 63 - Long.numberOfLeadingZeros(size);
+	}
+
+	/**
+	 * @param bin number of the logarithmic bin.
+	 * @return Count of clusters with sizes from 2^bin to 2^(bin + 1) - 1.
+	 */
+	public long getCountOfSizeBin(int bin){
+		return sizeBins[bin];
+	}
+
+	/**
+	 * @return Count of clusters, which don't span the lattice and are too large for the exact histogram.
+	 */
+	public long getOverflow(){
+		return overflow;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		String nl = System.lineSeparator();
+		sb.append("Count of clusters: ").append(count).append(nl);
+		sb.append("Occupied sites: ").append(occupied).append(nl);
+		sb.append("Largest cluster: ").append(largest).append(nl);
+		sb.append("Average cluster size: ").append(getAverageSize()).append(nl);
+		sb.append("Mean cluster size: ").append(getMeanClusterSize()).append(nl);
+		return sb.toString();
+	}
+}
@@ -1,143 +1,222 @@
 package hk;
 
 import hk.cell.*;
+import hk.experiment.TwoDimensionalPercolation;
 
 import java.util.*;
 
+import static hk.experiment.TwoDimensionalPercolation.*;
+
 /**
  * Class, which provide methods for Hoshen-Kopelman algorithm.
  */
 public class HoshenKopelman
 {
-	private final List<Integer> labels = new ArrayList<>();
+	private final UnionFind labels = new UnionFind();
+	private int[] relabelMap = new int[1];
+	private int[] clusterSizes = new int[1];
 
 	/**
-	 * Search for real cluster label.
-	 * @param cell cell for label searching.
-	 * @return Point to real cluster label of the cell.
+	 * Label clusters of the initial lattice into the result slice.
+	 * Sites are read from the initial lattice at the coordinates of the slice.
+	 * Roots of clusters are marked by the edges of the whole lattice, which they touch.
+	 * @param init occupancy lattice.
+	 * @param result slice for the cluster labels.
 	 */
-	private int find(Cell cell)
+	public void compute(BitLattice init, CellRange result)
 	{
-		int index = cell.getValue();
-		if(index > 0) --index;
-		while(index != labels.get(index))
+		assert result.getEndX() <= init.getRows() && result.getEndY() <= init.getCols();
+
+		final long[] words = init.getWords();
+		final int[] out = result.getGrid().getValues();
+		final int outStride = result.getGrid().getCols();
+		final int startX = result.getStartX(), endX = result.getEndX();
+		final int startY = result.getStartY(), endY = result.getEndY();
+		final int firstWord = startY >>> 6, lastWord = (endY - 1) >>> 6;
+		final long firstMask = -1L << startY, lastMask = -1L >>> (63 - ((endY - 1) & 63));
+		final int lastRow = init.getRows() - 1, lastCol = init.getCols() - 1;
+		int rowIndex, outIndex, wordIndex, y, root, edges, rowEdges;
+		long word;
+
+		for(int x = startX ; x < endX ; x++)
 		{
-			labels.set(index, labels.get(labels.get(index)));
-			index = labels.get(index);
+			rowIndex = x * outStride;
+			wordIndex = init.getRowOffset(x);
+			rowEdges = ((x == 0) ? TOP_EDGE : 0) | ((x == lastRow) ? BOTTOM_EDGE : 0);
+
+			// Empty cells are zero in the result
+			Arrays.fill(out, rowIndex + startY, rowIndex + endY, 0);
+
+			for(int w = firstWord ; w <= lastWord ; w++)
+			{
+				word = words[wordIndex + w];
+
+				// Skip the whole word of empty cells
+				if(word == 0) continue;
+
+				if(w == firstWord) word &= firstMask;
+				if(w == lastWord) word &= lastMask;
+
+				while(word != 0)
+				{
+					y = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+
+					outIndex = rowIndex + y;
+					root = labelCell(
+							(x > startX) ? out[outIndex - outStride] : 0,
+							(y > startY) ? out[outIndex - 1] : 0);
+					out[outIndex] = root;
+
+					edges = rowEdges | ((y == 0) ? LEFT_EDGE : 0) | ((y == lastCol) ? RIGHT_EDGE : 0);
+					if(edges != 0) labels.mark(root, edges);
+				}
+			}
 		}
-		return index;
 	}
 
 	/**
-	 * Merge two neighbors clusters into one.
-	 * @param first,second cell of clusters.
-	 * @return Minimal label of resulting cluster.
+	 * Find the kind of percolation by edge flags of clusters after {@link #compute}.
+	 * @return Kind of percolation.
 	 */
-	private int union(Cell first, Cell second)
+	public TwoDimensionalPercolation getPercolation()
 	{
-		Cell max, min;
-		if(first.getValue() < second .getValue())
-		{
-			min = first;
-			max = second;
-		}
-		else
-		{
-			min = second;
-			max = first;
-		}
-		int result = find(min);
-		labels.set(result, find(max));
-		return min.getValue();
+		return getPercolation(labels);
 	}
 
 	/**
-	 * Create new cluster label.
-	 * @return New label.
+	 * Count clusters by sizes and edge flags of the label table after {@link #compute}.
+	 * The lattice isn't scanned.
+	 * @param statistics statistics to fill.
 	 */
-	private int makeNewCluster()
+	public void collectStatistics(ClusterStatistics statistics)
 	{
-		labels.add(labels.size());
-		return labels.size();
+		collectStatistics(labels, statistics);
 	}
 
-	public void compute(CellRange init, CellRange result)
+	/**
+	 * Count clusters by root labels of the table.
+	 * @param labels label table.
+	 * @param statistics statistics to fill.
+	 */
+	static void collectStatistics(UnionFind labels, ClusterStatistics statistics)
 	{
-		Cell up, left, readOnly;
-		int upValue, leftValue;
-
-		for(CellRange.CellIterator it =
-		    (CellRange.CellIterator)init.iterator(),
-		    resultIt = (CellRange.CellIterator)result.iterator();
-		    it.hasNext() ;)
+		int size;
+		for(int l = 1, count = labels.getCount() ; l <= count ; l++)
 		{
-			// Get next cells
-			readOnly = it.next();
-			resultIt.next();
-
-			// If cell = zero then just skip it
-			if(readOnly.getValue() == 0)
+			if(!labels.isRoot(l)) continue;
+			size = labels.getSize(l);
+			if(size > 0)
 			{
-				resultIt.set(0);
-				continue;
+				statistics.add(size, ofEdges(labels.getFlags(l)) != NONE);
 			}
+		}
+	}
 
-			up = it.getNorth();
-			left = it.getWest();
-			upValue = up.getValue();
-			leftValue = left.getValue();
+	/**
+	 * Find the kind of percolation by edge flags of root labels.
+	 * @param labels label table.
+	 * @return Kind of percolation.
+	 */
+	static TwoDimensionalPercolation getPercolation(UnionFind labels)
+	{
+		boolean byX = false, byY = false;
+		TwoDimensionalPercolation percolation;
+		for(int l = 1, count = labels.getCount() ; l <= count ; l++)
+		{
+			if(!labels.isRoot(l)) continue;
+			percolation = ofEdges(labels.getFlags(l));
+			byX |= percolation.isByX();
+			byY |= percolation.isByY();
+		}
+		return of(byX, byY);
+	}
 
-			// Determine cell's label by surrounding cells
-			if(upValue == 0 && leftValue == 0)
-			{
-				// Mark lone cell as element of new cluster
-				resultIt.set(makeNewCluster());
-			}
-			else if(upValue == 0)
-			{
-				resultIt.set(resultIt.getWest().getValue());
-			}
-			else if(leftValue == 0)
-			{
-				resultIt.set(resultIt.getNorth().getValue());
-			}
-			else
-			{
-				resultIt.set(union(resultIt.getNorth(), resultIt.getWest()));
-			}
+	/**
+	 * Determine the label of occupied cell by surrounding cells.
+	 * @param upValue,leftValue labels of north and west neighbors.
+	 * @return Root label of the cell's cluster.
+	 */
+	private int labelCell(int upValue, int leftValue)
+	{
+		int root;
+		if(upValue == 0 && leftValue == 0)
+		{
+			// Mark lone cell as element of new cluster
+			return labels.makeSet(1);
+		}
+		else if(upValue == 0)
+		{
+			root = labels.find(leftValue);
 		}
+		else if(leftValue == 0)
+		{
+			root = labels.find(upValue);
+		}
+		else
+		{
+			root = labels.union(upValue, leftValue);
+		}
+		labels.grow(root, 1);
+		return root;
 	}
 
 	/**
 	 * Remove redundant cluster labels.
+	 * New labels are numbered in order of the first occurrence in the slice.
 	 * @param dataset lattice slice.
 	 * @return Count of new labels.
 	 */
 	public int relabel(CellRange dataset)
 	{
-		Map<Integer, Integer> labelSet = new HashMap<>();
-		int found;
-		Cell cell;
-
-		CellRange.CellIterator it = (CellRange.CellIterator)dataset.iterator();
-		while(it.hasNext())
+		final int count = labels.getCount();
+		if(relabelMap.length <= count)
 		{
-			cell = it.next();
-			if(cell.getValue() == 0) continue;
+			relabelMap = new int[count + 1];
+		}
+		else
+		{
+			Arrays.fill(relabelMap, 0, count + 1, 0);
+		}
+
+		final int[] map = relabelMap;
+		final int[] values = dataset.getGrid().getValues();
+		int found, newCount = 0;
 
-			found = find(cell);
-			if(!labelSet.containsKey(found))
+		for(CellRange.Cursor cursor = dataset.cursor() ; cursor.nextRow() ; )
+		{
+			for(int index = cursor.getRowStart(), end = cursor.getRowEnd() ; index < end ; index++)
 			{
-				labelSet.put(found, 1 + labelSet.size());
+				if(values[index] == 0) continue;
+
+				found = labels.find(values[index]);
+				if(map[found] == 0)
+				{
+					map[found] = ++newCount;
+					if(clusterSizes.length <= newCount)
+					{
+						clusterSizes = Arrays.copyOf(clusterSizes, Math.max(count + 1, newCount + 1));
+					}
+					clusterSizes[newCount] = labels.getSize(found);
+				}
+
+				values[index] = map[found];
 			}
-
-			cell.setValue(labelSet.get(found));
 		}
 
-		return labelSet.size();
+		return newCount;
+	}
+
+	/**
+	 * Sizes of clusters after the last relabeling.
+	 * @return Array, where element with index of new label is the size of its cluster.
+	 */
+	public int[] getClusterSizes()
+	{
+		return clusterSizes;
 	}
 
-	public List<Integer> getLabels()
+	public UnionFind getLabels()
 	{
 		return labels;
 	}
@@ -2,19 +2,36 @@ package hk;
 
 import hk.cell.*;
 import hk.experiment.TwoDimensionalPercolation;
+import hk.util.BinaryLatticeFormat;
+import hk.util.LatticeParser;
+import hk.util.LatticePrinter;
 
-import java.util.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class is created for wrapping lattice
  * and executing the Hoshen-Kopelman algorithm on it.
+ * After clusterization the result lattice keeps raw labels and the label table;
+ * labels are relabeled only when the result lattice or clusters are observed.
  */
 public class Lattice
 {
-	private Cell[][] initialLattice;
-	private Cell[][] resultLattice;
+	private BitLattice initialLattice;
+	private CellGrid resultLattice;
 	private HoshenKopelman hk = new HoshenKopelman();
+	private ParallelHoshenKopelman parallelHk;
 	private boolean isComputed = false;
+	private boolean isRelabeled = false;
+	private boolean isParallel = false;
+	private final ClusterStatistics statistics = new ClusterStatistics();
+	private boolean hasStatistics = false;
+	private int clusterCount = 0;
+	private int[] clusterSizes;
+	private TwoDimensionalPercolation percolation = TwoDimensionalPercolation.NONE;
 
 	public Lattice()
 	{
@@ -22,45 +39,92 @@ public class Lattice
 
 	public Lattice(Cell[][] lattice)
 	{
-		initialLattice = new Cell[lattice.length][];
-		resultLattice = new Cell[lattice.length][lattice[0].length];
-		for(int i = 0 ; i < initialLattice.length ; i++)
-		{
-			initialLattice[i] = Arrays.copyOf(lattice[i], lattice[i].length);
-			for(int j = 0 ; j < initialLattice[i].length ; j++){
-				resultLattice[i][j] = new Cell();
-			}
-		}
+		this(new CellGrid(lattice));
+	}
+
+	/**
+	 * Construct the lattice, where non-zero cells of the grid are occupied.
+	 * @param lattice initial lattice.
+	 */
+	public Lattice(CellGrid lattice)
+	{
+		this(new BitLattice(lattice));
+	}
+
+	/**
+	 * Wrap the occupancy lattice. The lattice isn't copied.
+	 * @param lattice initial lattice.
+	 */
+	public Lattice(BitLattice lattice)
+	{
+		initialLattice = lattice;
+		resultLattice = new CellGrid(lattice.getRows(), lattice.getCols());
 	}
 
 	public void clusterize()
 	{
 		hk.getLabels().clear();
 
-		CellRange init = new CellRange(initialLattice);
-		CellRange result = new CellRange(resultLattice);
+		hk.compute(initialLattice, new CellRange(resultLattice));
+		percolation = hk.getPercolation();
 
-		hk.compute(init, result);
+		isComputed = true;
+		isRelabeled = false;
+		isParallel = false;
+		hasStatistics = false;
+	}
 
-		hk.relabel(result);
+	/**
+	 * Replace raw labels of the result lattice by consecutive ones, if it isn't done yet.
+	 */
+	private void relabel()
+	{
+		if(!isComputed || isRelabeled) return;
+
+		clusterCount = hk.relabel(new CellRange(resultLattice));
+		clusterSizes = hk.getClusterSizes();
+		isRelabeled = true;
+	}
+
+	/**
+	 * Find clusters by labeling horizontal strips of the lattice in parallel.
+	 * Labels are the same as after {@link #clusterize()} up to renumbering.
+	 * @param pool pool for labeling tasks.
+	 */
+	public void clusterize(ForkJoinPool pool)
+	{
+		if(parallelHk == null || parallelHk.getPool() != pool)
+		{
+			parallelHk = new ParallelHoshenKopelman(pool);
+		}
+
+		clusterCount = parallelHk.clusterize(initialLattice, resultLattice);
+		clusterSizes = parallelHk.getClusterSizes();
+		percolation = parallelHk.getPercolation();
 
+		// Strips are relabeled globally by the parallel algorithm
 		isComputed = true;
+		isRelabeled = true;
+		isParallel = true;
+		hasStatistics = false;
 	}
 
 	public void test()
 	{
+		relabel();
+
 		int north, east, west, south;
-		int rows = resultLattice.length, cols = resultLattice[0].length;
+		int rows = resultLattice.getRows(), cols = resultLattice.getCols();
 		int current;
 		for(int i = 0 ; i < rows ; i++){
 			for(int j = 0 ; j < cols ; j++){
-				current = resultLattice[i][j].getValue();
+				current = resultLattice.get(i, j);
 				if(current != 0)
 				{
-					north = (i == 0) ? 0 : resultLattice[i - 1][j].getValue();
-					south = (i == (rows - 1)) ? 0 : resultLattice[i + 1][j].getValue();
-					west = (j == 0) ? 0 : resultLattice[i][j - 1].getValue();
-					east = (j == (cols - 1)) ? 0 : resultLattice[i][j + 1].getValue();
+					north = (i == 0) ? 0 : resultLattice.get(i - 1, j);
+					south = (i == (rows - 1)) ? 0 : resultLattice.get(i + 1, j);
+					west = (j == 0) ? 0 : resultLattice.get(i, j - 1);
+					east = (j == (cols - 1)) ? 0 : resultLattice.get(i, j + 1);
 
 					assert (north == 0 || north == current);
 					assert (east == 0 || east == current);
@@ -74,74 +138,242 @@ public class Lattice
 	@Override
 	public String toString()
 	{
-		StringBuilder buf = new StringBuilder();
-		Cell[][] cells;
+		relabel();
+
+		StringWriter buf = new StringWriter();
 
 		final String endLine = System.lineSeparator();
 
 		if(!isComputed)
 		{
-			cells = initialLattice;
 			buf.append("The sizes of initial lattice is ");
 		}
 		else
 		{
-			cells = resultLattice;
 			buf.append("The sizes of result lattice is ");
 		}
 
-		buf.append(cells.length).append("x").append(cells[0].length)
-				.append(".").append(endLine);
+		buf.append(Integer.toString(initialLattice.getRows())).append("x")
+				.append(Integer.toString(initialLattice.getCols())).append(".").append(endLine);
 
-		buf.append(toPrintableLattice(cells));
+		try
+		{
+			exportText(buf, isComputed);
+		}
+		catch(IOException e)
+		{
+			// String writer doesn't fail
+			throw new IllegalStateException(e);
+		}
 
 		return buf.toString();
 	}
 
-	private String toPrintableLattice(Cell[][] cells)
+	/**
+	 * Write the lattice in the text format, which is read by {@link LatticeParser}.
+	 * @param writer destination, it isn't closed.
+	 * @param isLabeled write labels of clusters instead of the initial lattice.
+	 * @throws IOException if the writer fails.
+	 */
+	public void exportText(Writer writer, boolean isLabeled) throws IOException
 	{
-		StringBuilder buf = new StringBuilder();
-		for(Cell[] cell : cells)
+		LatticePrinter printer = new LatticePrinter(writer);
+		if(isLabeled)
 		{
-			buf.append(cell[0].getValue());
-			for(int j = 1 ; j < cells[0].length ; j++)
-			{
-				buf.append(",").append(cell[j]);
-			}
-			buf.append(System.lineSeparator());
+			printer.print(getLabeledLattice());
 		}
-		return buf.toString();
+		else
+		{
+			printer.print(initialLattice);
+		}
+	}
+
+	/**
+	 * Write the lattice in the format of {@link BinaryLatticeFormat}:
+	 * bit-packed encoding for the initial lattice or label encoding for clusters.
+	 * @param out destination, it isn't closed.
+	 * @param isLabeled write labels of clusters instead of the initial lattice.
+	 * @throws IOException if the stream fails.
+	 */
+	public void exportBinary(OutputStream out, boolean isLabeled) throws IOException
+	{
+		if(isLabeled)
+		{
+			BinaryLatticeFormat.write(getLabeledLattice(), out);
+		}
+		else
+		{
+			BinaryLatticeFormat.write(initialLattice, out);
+		}
+	}
+
+	private CellGrid getLabeledLattice()
+	{
+		if(!isComputed) throw new IllegalStateException("Clusters aren't found.");
+		relabel();
+		return resultLattice;
 	}
 
 	public void generateNewLattice(double[][] array, double chance)
 	{
-		if(initialLattice == null)
+		final int rows = array.length, cols = array[0].length;
+		resize(rows, cols);
+
+		// Pack 64 sites into each word
+		final long[] words = initialLattice.getWords();
+		double[] row;
+		long word;
+		for(int i = 0, index = 0 ; i < rows ; i++)
 		{
-			initialLattice = new Cell[array.length][array[0].length];
-			resultLattice = new Cell[array.length][array[0].length];
-			for(int i = 0 ; i < initialLattice.length ; i++)
+			row = array[i];
+			for(int j = 0 ; j < cols ; j += 64)
 			{
-				for(int j = 0 ; j < initialLattice[i].length ; j++)
+				word = 0L;
+				for(int k = Math.min(64, cols - j) - 1 ; k >= 0 ; k--)
 				{
-					initialLattice[i][j] = new Cell();
-					resultLattice[i][j] = new Cell();
+					word = (word << 1) | ((row[j + k] < chance) ? 1L : 0L);
 				}
+				words[index++] = word;
 			}
 		}
 
-		for(int i = 0 ; i < array.length ; i++)
+		isComputed = false;
+		hasStatistics = false;
+		percolation = TwoDimensionalPercolation.NONE;
+	}
+
+	/**
+	 * Occupy sites, whose thresholds in the field are less than the chance.
+	 * @param field random field of thresholds.
+	 * @param chance chance of the site to be occupied.
+	 */
+	public void generateNewLattice(RandomField field, double chance)
+	{
+		resize(field.getRows(), field.getCols());
+		field.occupy(initialLattice, chance);
+
+		isComputed = false;
+		hasStatistics = false;
+		percolation = TwoDimensionalPercolation.NONE;
+	}
+
+	/**
+	 * Occupy sites of horizontal strips of the lattice in parallel.
+	 * The lattice is the same as one generated by a single thread.
+	 * @param field random field of thresholds, which may be read by several threads.
+	 * @param chance chance of the site to be occupied.
+	 * @param pool pool for strip tasks.
+	 */
+	public void generateNewLattice(final RandomField field, final double chance, ForkJoinPool pool)
+	{
+		resize(field.getRows(), field.getCols());
+
+		final BitLattice lattice = initialLattice;
+		final int rows = field.getRows(), strips = Math.min(rows, pool.getParallelism());
+		final List<RecursiveAction> tasks = new ArrayList<>(strips);
+		for(int s = 0 ; s < strips ; s++)
 		{
-			for(int j = 0 ; j < array[0].length ; j++)
+			// Rows start from new words, so strips don't share words
+			final int firstRow = (int)((long)rows * s / strips), lastRow = (int)((long)rows * (s + 1) / strips);
+			tasks.add(new RecursiveAction()
 			{
-				initialLattice[i][j].setValue((array[i][j] < chance) ? 1 : 0);
-			}
+				@Override
+				protected void compute(){
+					field.occupy(lattice, chance, firstRow, lastRow);
+				}
+			});
 		}
+		pool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute(){
+				invokeAll(tasks);
+			}
+		});
 
 		isComputed = false;
+		hasStatistics = false;
+		percolation = TwoDimensionalPercolation.NONE;
+	}
+
+	/**
+	 * Replace lattices by new ones, if sizes differ.
+	 */
+	private void resize(int rows, int cols)
+	{
+		if(initialLattice == null || initialLattice.getRows() != rows ||
+			initialLattice.getCols() != cols)
+		{
+			initialLattice = new BitLattice(rows, cols);
+			resultLattice = new CellGrid(rows, cols);
+		}
 	}
 
+	/**
+	 * @return Kind of percolation found by the last clusterization.
+	 */
 	public TwoDimensionalPercolation checkEdges()
 	{
-		return TwoDimensionalPercolation.checkEdges(resultLattice);
+		return percolation;
+	}
+
+	/**
+	 * @return True, if clusters of the current initial lattice are found.
+	 */
+	public boolean isComputed(){
+		return isComputed;
+	}
+
+	/**
+	 * @return Count of clusters found by the last clusterization.
+	 */
+	public int getClusterCount(){
+		relabel();
+		return clusterCount;
+	}
+
+	/**
+	 * Statistics of clusters, which are found by the last clusterization.
+	 * They are collected from the label table without scanning the lattice.
+	 * @return Cluster statistics.
+	 */
+	public ClusterStatistics getClusterStatistics(){
+		if(!hasStatistics)
+		{
+			statistics.clear();
+			if(isComputed)
+			{
+				if(isParallel)
+				{
+					parallelHk.collectStatistics(statistics);
+				}
+				else
+				{
+					hk.collectStatistics(statistics);
+				}
+			}
+			hasStatistics = true;
+		}
+		return statistics;
+	}
+
+	/**
+	 * @return Sizes of clusters indexed by labels of the result lattice.
+	 */
+	public int[] getClusterSizes(){
+		relabel();
+		return clusterSizes;
+	}
+
+	public BitLattice getInitialLattice(){
+		return initialLattice;
+	}
+
+	/**
+	 * @return Result lattice with consecutive labels.
+	 */
+	public CellGrid getResultLattice(){
+		relabel();
+		return resultLattice;
 	}
 }
@@ -0,0 +1,282 @@
+package hk;
+
+import hk.cell.*;
+import hk.experiment.TwoDimensionalPercolation;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hoshen-Kopelman algorithm over horizontal strips of the lattice.
+ * Every strip is labeled by its own fork-join task with its own label space,
+ * then labels are merged across strip boundaries and relabeled globally.
+ */
+public class ParallelHoshenKopelman
+{
+	/**
+	 * Minimal count of rows in a strip. Thinner strips cost more for merging than they save.
+	 */
+	private static final int MIN_STRIP_ROWS = 16;
+
+	private final ForkJoinPool pool;
+	private final UnionFind labels = new UnionFind();
+	private HoshenKopelman[] stripEngines = new HoshenKopelman[0];
+	private int[] bounds, offsets;
+	private int[] relabelMap = new int[1];
+	private int[] clusterSizes = new int[1];
+	private int clusterCount = 0;
+	private TwoDimensionalPercolation percolation = TwoDimensionalPercolation.NONE;
+	private BitLattice init;
+	private CellGrid result;
+
+	/**
+	 * Label strip of the lattice in its own label space.
+	 */
+	private class LabelStrip extends RecursiveAction
+	{
+		private final int strip;
+
+		LabelStrip(int strip){
+			this.strip = strip;
+		}
+
+		@Override
+		protected void compute()
+		{
+			HoshenKopelman hk = stripEngines[strip];
+			hk.getLabels().clear();
+			hk.compute(init, new CellRange(result, bounds[strip], 0, bounds[strip + 1], result.getCols()));
+		}
+	}
+
+	/**
+	 * Replace local labels of the strip with global ones.
+	 */
+	private class RelabelStrip extends RecursiveAction
+	{
+		private final int strip;
+
+		RelabelStrip(int strip){
+			this.strip = strip;
+		}
+
+		@Override
+		protected void compute()
+		{
+			final UnionFind local = stripEngines[strip].getLabels();
+			final int[] values = result.getValues(), map = relabelMap;
+			final int offset = offsets[strip];
+			final int end = result.index(bounds[strip + 1], 0);
+
+			for(int index = result.index(bounds[strip], 0) ; index < end ; index++)
+			{
+				if(values[index] != 0)
+				{
+					values[index] = map[offset + local.find(values[index])];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param pool pool for labeling tasks.
+	 */
+	public ParallelHoshenKopelman(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Label clusters of the initial lattice.
+	 * @param init occupancy lattice.
+	 * @param result grid of the same sizes for the cluster labels.
+	 * @return Count of clusters.
+	 */
+	public int clusterize(BitLattice init, CellGrid result)
+	{
+		assert init.getRows() == result.getRows() && init.getCols() == result.getCols();
+
+		this.init = init;
+		this.result = result;
+		try
+		{
+			final int strips = split(result.getRows());
+
+			// Label strips independently
+			invokeForStrips(false, strips);
+
+			mergeStrips(strips);
+
+			// Write global labels
+			invokeForStrips(true, strips);
+
+			return clusterCount;
+		}
+		finally
+		{
+			this.init = null;
+			this.result = null;
+		}
+	}
+
+	public ForkJoinPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * @return Kind of percolation after the last clusterization.
+	 */
+	public TwoDimensionalPercolation getPercolation()
+	{
+		return percolation;
+	}
+
+	/**
+	 * Count clusters of the last clusterization by the merged label table.
+	 * @param statistics statistics to fill.
+	 */
+	public void collectStatistics(ClusterStatistics statistics)
+	{
+		HoshenKopelman.collectStatistics(labels, statistics);
+	}
+
+	/**
+	 * Sizes of clusters after the last clusterization.
+	 * @return Array, where element with index of label is the size of its cluster.
+	 */
+	public int[] getClusterSizes()
+	{
+		return clusterSizes;
+	}
+
+	/**
+	 * Compute bounds of the strips.
+	 * @param rows count of rows of the lattice.
+	 * @return Count of strips.
+	 */
+	private int split(int rows)
+	{
+		int strips = Math.min(4 * pool.getParallelism(), rows / MIN_STRIP_ROWS);
+		strips = Math.max(strips, 1);
+
+		bounds = new int[strips + 1];
+		for(int k = 0 ; k <= strips ; k++)
+		{
+			bounds[k] = (int)((long)rows * k / strips);
+		}
+
+		if(stripEngines.length < strips)
+		{
+			int old = stripEngines.length;
+			stripEngines = Arrays.copyOf(stripEngines, strips);
+			for(int k = old ; k < strips ; k++)
+			{
+				stripEngines[k] = new HoshenKopelman();
+			}
+		}
+		offsets = new int[strips];
+
+		return strips;
+	}
+
+	private void invokeForStrips(final boolean relabel, final int strips)
+	{
+		pool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute()
+			{
+				List<RecursiveAction> tasks = new ArrayList<>(strips);
+				for(int k = 0 ; k < strips ; k++)
+				{
+					tasks.add(relabel ? new RelabelStrip(k) : new LabelStrip(k));
+				}
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * Join label spaces of the strips, merge clusters across strip boundaries
+	 * and build the map from global labels to the final ones.
+	 * @param strips count of strips.
+	 */
+	private void mergeStrips(int strips)
+	{
+		UnionFind local;
+		int count;
+
+		// Global label of local label l of strip k is offsets[k] + l
+		labels.clear();
+		for(int k = 0 ; k < strips ; k++)
+		{
+			local = stripEngines[k].getLabels();
+			offsets[k] = labels.getCount();
+			count = local.getCount();
+			for(int l = 1 ; l <= count ; l++)
+			{
+				if(local.isRoot(l))
+				{
+					labels.mark(labels.makeSet(local.getSize(l)), local.getFlags(l));
+				}
+				else
+				{
+					labels.makeSet(0);
+				}
+			}
+		}
+
+		// Merge clusters along the seams
+		final int[] values = result.getValues();
+		final int cols = result.getCols();
+		int upper, lower;
+		for(int k = 1 ; k < strips ; k++)
+		{
+			UnionFind upperLabels = stripEngines[k - 1].getLabels();
+			local = stripEngines[k].getLabels();
+			int index = result.index(bounds[k], 0);
+			for(int j = 0 ; j < cols ; j++, index++)
+			{
+				upper = values[index - cols];
+				lower = values[index];
+				if(upper != 0 && lower != 0)
+				{
+					labels.union(offsets[k - 1] + upperLabels.find(upper),
+							offsets[k] + local.find(lower));
+				}
+			}
+		}
+
+		// Number the clusters
+		count = labels.getCount();
+		if(relabelMap.length <= count)
+		{
+			relabelMap = new int[count + 1];
+		}
+		if(clusterSizes.length <= count)
+		{
+			clusterSizes = new int[count + 1];
+		}
+
+		int clusters = 0;
+		for(int g = 1 ; g <= count ; g++)
+		{
+			if(labels.isRoot(g) && labels.getSize(g) > 0)
+			{
+				relabelMap[g] = ++clusters;
+				clusterSizes[clusters] = labels.getSize(g);
+			}
+			else
+			{
+				relabelMap[g] = 0;
+			}
+		}
+		for(int g = 1 ; g <= count ; g++)
+		{
+			relabelMap[g] = relabelMap[labels.find(g)];
+		}
+		clusterCount = clusters;
+		percolation = HoshenKopelman.getPercolation(labels);
+	}
+}
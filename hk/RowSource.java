@@ -0,0 +1,23 @@
+package hk;
+
+import java.io.IOException;
+
+/**
+ * Source of lattice rows for the streaming clusterization.
+ */
+public interface RowSource
+{
+	/**
+	 * @return Count of columns of the lattice.
+	 */
+	int getCols();
+
+	/**
+	 * Read the next row.
+	 * @param row bit-packed row, bit y % 64 of word y / 64 is set for occupied site y.
+	 * Words are zero before the call; bits beyond the last column must stay zero.
+	 * @return False, if there are no more rows.
+	 * @throws IOException if the row can't be read.
+	 */
+	boolean nextRow(long[] row) throws IOException;
+}
@@ -0,0 +1,66 @@
+package hk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Neighborhood of a site on the hypercubic lattice.
+ */
+public enum Stencil
+{
+	/**
+	 * Sites, which differ by one along one axis: 4 in 2D, 6 in 3D.
+	 */
+	NEAREST,
+	/**
+	 * All sites of the surrounding cube: 8 in 2D, 26 in 3D.
+	 */
+	FULL;
+
+	/**
+	 * Neighbors, which precede the site in row-major order, so they are labeled before it.
+	 * The last axis changes fastest.
+	 * @param dimensions count of axes.
+	 * @return Coordinate deltas of neighbors, each one is -1, 0 or 1.
+	 */
+	public int[][] getBackwardNeighbors(int dimensions)
+	{
+		if(dimensions < 1) throw new IllegalArgumentException();
+
+		List<int[]> result = new ArrayList<>();
+		if(this == NEAREST)
+		{
+			for(int axis = 0 ; axis < dimensions ; axis++)
+			{
+				int[] delta = new int[dimensions];
+				delta[axis] = -1;
+				result.add(delta);
+			}
+		}
+		else
+		{
+			int[] delta = new int[dimensions];
+			int count = 1, axis, code;
+			for(axis = 0 ; axis < dimensions ; axis++) count *= 3;
+
+			for(int k = 0 ; k < count ; k++)
+			{
+				// Digits of k in base 3 are deltas plus one
+				code = k;
+				for(axis = dimensions - 1 ; axis >= 0 ; axis--)
+				{
+					delta[axis] = code % 3 - 1;
+					code /= 3;
+				}
+
+				// The first nonzero delta is negative for preceding sites
+				for(axis = 0 ; axis < dimensions && delta[axis] == 0 ; axis++);
+				if(axis < dimensions && delta[axis] < 0)
+				{
+					result.add(delta.clone());
+				}
+			}
+		}
+		return result.toArray(new int[result.size()][]);
+	}
+}
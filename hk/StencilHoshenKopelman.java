@@ -0,0 +1,428 @@
+package hk;
+
+import java.util.Arrays;
+
+/**
+ * Hoshen-Kopelman algorithm for hypercubic lattices of any dimension.
+ * Sites are stored in flat row-major order, the last axis changes fastest.
+ * Neighbors are found by precomputed index offsets of the stencil.
+ * 2D and 3D lattices with nearest neighbors have their own loops.
+ * <p>
+ * Roots of clusters are marked by two flags for each axis: the first and the last layer.
+ * Flags of the last axis are the lowest bits, so flags of a 2D lattice
+ * are edge flags of {@link hk.experiment.TwoDimensionalPercolation}.
+ */
+public class StencilHoshenKopelman
+{
+	private static final int SPAN_BITS = 0x55555555;
+
+	private final int[] dims;
+	private final int size;
+	private final Stencil stencil;
+	private final int[][] neighbors;
+	private final int[] offsets;
+	private final UnionFind labels = new UnionFind();
+	private final int[] sites;
+	private int[] relabelMap = new int[1];
+	private int clusterCount = 0;
+	private int spanningAxes = 0;
+
+	/**
+	 * @param stencil neighborhood of sites.
+	 * @param dims sizes of the lattice along axes.
+	 */
+	public StencilHoshenKopelman(Stencil stencil, int... dims)
+	{
+		// Up to 16 axes fit into flags of the label table
+		if(stencil == null || dims.length < 1 || dims.length > 16) throw new IllegalArgumentException();
+
+		long total = 1;
+		for(int dim : dims)
+		{
+			if(dim < 1) throw new IllegalArgumentException();
+			total *= dim;
+			// Bit indexes of the occupancy words must fit into int
+			if(total > Integer.MAX_VALUE - 64) throw new IllegalArgumentException("Lattice is too large");
+		}
+
+		this.dims = dims.clone();
+		this.size = (int)total;
+		this.stencil = stencil;
+		this.sites = new int[size];
+
+		int[] strides = new int[dims.length];
+		strides[dims.length - 1] = 1;
+		for(int axis = dims.length - 2 ; axis >= 0 ; axis--)
+		{
+			strides[axis] = strides[axis + 1] * dims[axis + 1];
+		}
+
+		neighbors = stencil.getBackwardNeighbors(dims.length);
+		offsets = new int[neighbors.length];
+		for(int k = 0 ; k < neighbors.length ; k++)
+		{
+			for(int axis = 0 ; axis < dims.length ; axis++)
+			{
+				offsets[k] += neighbors[k][axis] * strides[axis];
+			}
+		}
+	}
+
+	public int[] getDims(){
+		return dims.clone();
+	}
+
+	public Stencil getStencil(){
+		return stencil;
+	}
+
+	/**
+	 * @return Count of sites.
+	 */
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * @param coords coordinates of the site.
+	 * @return Index of the site in flat row-major order.
+	 */
+	public int getIndex(int... coords)
+	{
+		if(coords.length != dims.length) throw new IllegalArgumentException();
+
+		int index = 0;
+		for(int axis = 0 ; axis < dims.length ; axis++)
+		{
+			if(coords[axis] < 0 || coords[axis] >= dims[axis]) throw new IndexOutOfBoundsException();
+			index = index * dims[axis] + coords[axis];
+		}
+		return index;
+	}
+
+	/**
+	 * @return Occupancy words of the lattice, where bit of the site index is set for occupied site.
+	 */
+	public long[] newOccupancy()
+	{
+		return new long[(size + 63) >>> 6];
+	}
+
+	/**
+	 * Flag of the first layer of the axis.
+	 * @param axis number of the axis.
+	 * @return Flag bit, the flag of the last layer is the next bit.
+	 */
+	public int getLowEdge(int axis)
+	{
+		return 1 << (2 * (dims.length - 1 - axis));
+	}
+
+	/**
+	 * Label clusters of the occupancy into {@link #getSites()}.
+	 * @param occupied bit of the site index is set for occupied site.
+	 * @return Count of clusters.
+	 */
+	public int compute(long[] occupied)
+	{
+		if(occupied.length < (size + 63) >>> 6) throw new IllegalArgumentException();
+
+		Arrays.fill(sites, 0);
+		labels.clear();
+
+		if(stencil == Stencil.NEAREST && dims.length == 2)
+		{
+			computeSquare(occupied);
+		}
+		else if(stencil == Stencil.NEAREST && dims.length == 3)
+		{
+			computeCubic(occupied);
+		}
+		else
+		{
+			computeGeneric(occupied);
+		}
+
+		// Every root has at least one site, so the table gives the result
+		int flags, spanning;
+		clusterCount = 0;
+		spanningAxes = 0;
+		for(int l = 1, count = labels.getCount() ; l <= count ; l++)
+		{
+			if(!labels.isRoot(l)) continue;
+			++clusterCount;
+			flags = labels.getFlags(l);
+			spanning = flags & (flags >>> 1) & SPAN_BITS;
+			for(int axis = 0 ; axis < dims.length ; axis++)
+			{
+				if((spanning & getLowEdge(axis)) != 0) spanningAxes |= 1 << axis;
+			}
+		}
+		return clusterCount;
+	}
+
+	/**
+	 * Square lattice with 4 neighbors.
+	 */
+	private void computeSquare(long[] occupied)
+	{
+		final int[] sites = this.sites;
+		final int rows = dims[0], cols = dims[1];
+		final int top = getLowEdge(0), bottom = top << 1, left = getLowEdge(1), right = left << 1;
+		int start, index, y, root, edges, rowEdges;
+		long word;
+
+		for(int x = 0 ; x < rows ; x++)
+		{
+			start = x * cols;
+			rowEdges = ((x == 0) ? top : 0) | ((x == rows - 1) ? bottom : 0);
+
+			for(int w = start >>> 6, last = (start + cols - 1) >>> 6 ; w <= last ; w++)
+			{
+				word = occupied[w];
+				if(word == 0) continue;
+
+				word = maskRow(word, w, start, start + cols);
+				while(word != 0)
+				{
+					index = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					y = index - start;
+
+					root = join(0, (x > 0) ? sites[index - cols] : 0);
+					root = join(root, (y > 0) ? sites[index - 1] : 0);
+					sites[index] = root = occupy(root);
+
+					edges = rowEdges | ((y == 0) ? left : 0) | ((y == cols - 1) ? right : 0);
+					if(edges != 0) labels.mark(root, edges);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cubic lattice with 6 neighbors.
+	 */
+	private void computeCubic(long[] occupied)
+	{
+		final int[] sites = this.sites;
+		final int layers = dims[0], rows = dims[1], cols = dims[2], plane = rows * cols;
+		final int front = getLowEdge(0), back = front << 1;
+		final int top = getLowEdge(1), bottom = top << 1, left = getLowEdge(2), right = left << 1;
+		int start, index, y, root, edges, rowEdges;
+		long word;
+
+		for(int z = 0 ; z < layers ; z++)
+		{
+			for(int x = 0 ; x < rows ; x++)
+			{
+				start = z * plane + x * cols;
+				rowEdges = ((z == 0) ? front : 0) | ((z == layers - 1) ? back : 0) |
+						((x == 0) ? top : 0) | ((x == rows - 1) ? bottom : 0);
+
+				for(int w = start >>> 6, last = (start + cols - 1) >>> 6 ; w <= last ; w++)
+				{
+					word = occupied[w];
+					if(word == 0) continue;
+
+					word = maskRow(word, w, start, start + cols);
+					while(word != 0)
+					{
+						index = (w << 6) + Long.numberOfTrailingZeros(word);
+						word &= word - 1;
+						y = index - start;
+
+						root = join(0, (z > 0) ? sites[index - plane] : 0);
+						root = join(root, (x > 0) ? sites[index - cols] : 0);
+						root = join(root, (y > 0) ? sites[index - 1] : 0);
+						sites[index] = root = occupy(root);
+
+						edges = rowEdges | ((y == 0) ? left : 0) | ((y == cols - 1) ? right : 0);
+						if(edges != 0) labels.mark(root, edges);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Any dimension and stencil. Validity of neighbors is checked once per row
+	 * for all axes except the last one.
+	 */
+	private void computeGeneric(long[] occupied)
+	{
+		final int[] sites = this.sites;
+		final int outer = dims.length - 1, cols = dims[outer];
+		final int left = getLowEdge(outer), right = left << 1;
+		final int count = neighbors.length;
+		final int[] coords = new int[outer];
+		final boolean[] isValid = new boolean[count];
+		int start, index, y, root, edges, rowEdges, axis, k, delta;
+		long word;
+
+		for(start = 0 ; start < size ; start += cols)
+		{
+			rowEdges = 0;
+			for(axis = 0 ; axis < outer ; axis++)
+			{
+				if(coords[axis] == 0) rowEdges |= getLowEdge(axis);
+				if(coords[axis] == dims[axis] - 1) rowEdges |= getLowEdge(axis) << 1;
+			}
+			for(k = 0 ; k < count ; k++)
+			{
+				isValid[k] = true;
+				for(axis = 0 ; axis < outer && isValid[k] ; axis++)
+				{
+					delta = neighbors[k][axis];
+					isValid[k] = (delta < 0) ? coords[axis] > 0 :
+							(delta == 0 || coords[axis] < dims[axis] - 1);
+				}
+			}
+
+			for(int w = start >>> 6, last = (start + cols - 1) >>> 6 ; w <= last ; w++)
+			{
+				word = occupied[w];
+				if(word == 0) continue;
+
+				word = maskRow(word, w, start, start + cols);
+				while(word != 0)
+				{
+					index = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					y = index - start;
+
+					root = 0;
+					for(k = 0 ; k < count ; k++)
+					{
+						if(!isValid[k]) continue;
+						delta = neighbors[k][outer];
+						if((delta < 0 && y == 0) || (delta > 0 && y == cols - 1)) continue;
+						root = join(root, sites[index + offsets[k]]);
+					}
+					sites[index] = root = occupy(root);
+
+					edges = rowEdges | ((y == 0) ? left : 0) | ((y == cols - 1) ? right : 0);
+					if(edges != 0) labels.mark(root, edges);
+				}
+			}
+
+			// Next row of the outer axes
+			for(axis = outer - 1 ; axis >= 0 && ++coords[axis] == dims[axis] ; axis--)
+			{
+				coords[axis] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Leave bits of the row in the occupancy word.
+	 * @param start,end indexes of the first site and the site after the last one.
+	 */
+	private static long maskRow(long word, int w, int start, int end)
+	{
+		if(w == start >>> 6) word &= -1L << start;
+		if(w == (end - 1) >>> 6) word &= -1L >>> (63 - ((end - 1) & 63));
+		return word;
+	}
+
+	/**
+	 * Join the cluster of the site with the cluster of its neighbor.
+	 * @param root root label of the site or zero.
+	 * @param neighbor label of the neighbor or zero for empty one.
+	 * @return Root label of the site or zero.
+	 */
+	private int join(int root, int neighbor)
+	{
+		if(neighbor == 0) return root;
+		return (root == 0) ? labels.find(neighbor) : labels.union(root, neighbor);
+	}
+
+	/**
+	 * Add the site to its cluster.
+	 * @param root root label of the site or zero for lone site.
+	 * @return Root label of the site.
+	 */
+	private int occupy(int root)
+	{
+		if(root == 0) return labels.makeSet(1);
+		labels.grow(root, 1);
+		return root;
+	}
+
+	/**
+	 * Replace labels of sites by numbers of clusters from 1 to {@link #getClusterCount()}
+	 * in order of the first occurrence.
+	 * @return Count of clusters.
+	 */
+	public int relabel()
+	{
+		final int count = labels.getCount();
+		if(relabelMap.length <= count)
+		{
+			relabelMap = new int[count + 1];
+		}
+		else
+		{
+			Arrays.fill(relabelMap, 0, count + 1, 0);
+		}
+
+		final int[] map = relabelMap;
+		int found, newCount = 0;
+
+		for(int index = 0 ; index < size ; index++)
+		{
+			if(sites[index] == 0) continue;
+
+			found = labels.find(sites[index]);
+			if(map[found] == 0) map[found] = ++newCount;
+			sites[index] = map[found];
+		}
+		return newCount;
+	}
+
+	/**
+	 * Count clusters by sizes and flags of the label table after {@link #compute}.
+	 * Spanning clusters connect both layers of any axis.
+	 * @param statistics statistics to fill.
+	 */
+	public void collectStatistics(ClusterStatistics statistics)
+	{
+		int flags;
+		for(int l = 1, count = labels.getCount() ; l <= count ; l++)
+		{
+			if(!labels.isRoot(l)) continue;
+			flags = labels.getFlags(l);
+			statistics.add(labels.getSize(l), (flags & (flags >>> 1) & SPAN_BITS) != 0);
+		}
+	}
+
+	public int getClusterCount(){
+		return clusterCount;
+	}
+
+	/**
+	 * @return Bit mask of axes, along which a cluster connects the first and the last layers.
+	 */
+	public int getSpanningAxes(){
+		return spanningAxes;
+	}
+
+	/**
+	 * @param axis number of the axis.
+	 * @return True, if a cluster connects the first and the last layers of the axis.
+	 */
+	public boolean isSpanning(int axis){
+		return (spanningAxes & (1 << axis)) != 0;
+	}
+
+	/**
+	 * @return Labels of sites after {@link #compute}, zero for empty sites.
+	 */
+	public int[] getSites(){
+		return sites;
+	}
+
+	public UnionFind getLabels(){
+		return labels;
+	}
+}
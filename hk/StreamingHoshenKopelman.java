@@ -0,0 +1,232 @@
+package hk;
+
+import hk.experiment.TwoDimensionalPercolation;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static hk.experiment.TwoDimensionalPercolation.*;
+
+/**
+ * Hoshen-Kopelman algorithm over a stream of rows.
+ * Only labels of the previous and the current rows are kept.
+ * After each row, clusters which don't reach it can't grow anymore:
+ * they are counted in the statistics and their labels are recycled.
+ * Memory doesn't depend on the count of rows.
+ */
+public class StreamingHoshenKopelman
+{
+	private final int cols;
+	private final int wordsPerRow;
+	private final UnionFind labels;
+	private int[] previous, current;
+	private long[] row, nextRow;
+
+	/**
+	 * Per label of the row: sites of the previous rows,
+	 * sites of the cluster after the row and the new label.
+	 */
+	private final int[] compactMap, compactEdges;
+	private final long[] carried, totals, compactSites;
+
+	private final ClusterStatistics statistics = new ClusterStatistics();
+	private boolean byX, byY;
+	private long rows;
+
+	/**
+	 * @param cols count of columns of streamed lattices.
+	 */
+	public StreamingHoshenKopelman(int cols)
+	{
+		if(cols < 1) throw new IllegalArgumentException();
+		this.cols = cols;
+		this.wordsPerRow = (cols + 63) >>> 6;
+
+		// Each row has at most (cols + 1) / 2 clusters, so old and new labels fit into cols + 1
+		int capacity = cols + 2;
+		this.labels = new UnionFind(capacity);
+		this.previous = new int[cols];
+		this.current = new int[cols];
+		this.row = new long[wordsPerRow];
+		this.nextRow = new long[wordsPerRow];
+		this.compactMap = new int[capacity];
+		this.carried = new long[capacity];
+		this.totals = new long[capacity];
+		this.compactEdges = new int[capacity];
+		this.compactSites = new long[capacity];
+	}
+
+	/**
+	 * Find clusters of the streamed lattice.
+	 * @param source source of rows.
+	 * @throws IOException if the source can't be read.
+	 */
+	public void run(RowSource source) throws IOException
+	{
+		if(source.getCols() != cols) throw new IllegalArgumentException();
+
+		statistics.clear();
+		labels.clear();
+		Arrays.fill(previous, 0);
+		byX = byY = false;
+		rows = 0;
+
+		// Read one row ahead to know, which row is the last one
+		boolean hasRow = source.nextRow(row);
+		while(hasRow)
+		{
+			Arrays.fill(nextRow, 0L);
+			boolean hasNext = source.nextRow(nextRow);
+
+			int rowEdges = ((rows == 0) ? TOP_EDGE : 0) | (hasNext ? 0 : BOTTOM_EDGE);
+			labelRow(rowEdges);
+			finishRow();
+			++rows;
+
+			long[] tmp = row;
+			row = nextRow;
+			nextRow = tmp;
+			hasRow = hasNext;
+		}
+
+		// Clusters of the last row are complete too
+		Arrays.fill(current, 0);
+		finishRow();
+	}
+
+	/**
+	 * Label sites of the current row by labels of the previous row.
+	 * Labels 1..m of the previous row are already in the label table.
+	 * @param rowEdges edge flags of all sites of the row.
+	 */
+	private void labelRow(int rowEdges)
+	{
+		final int[] up = previous, out = current;
+		Arrays.fill(out, 0);
+
+		long word;
+		int y, upValue, leftValue, root;
+		for(int w = 0 ; w < wordsPerRow ; w++)
+		{
+			word = row[w];
+			while(word != 0)
+			{
+				y = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+
+				upValue = up[y];
+				leftValue = (y > 0) ? out[y - 1] : 0;
+
+				if(upValue == 0 && leftValue == 0)
+				{
+					root = labels.makeSet(1);
+					carried[root] = 0;
+				}
+				else
+				{
+					if(upValue == 0)
+					{
+						root = labels.find(leftValue);
+					}
+					else if(leftValue == 0)
+					{
+						root = labels.find(upValue);
+					}
+					else
+					{
+						root = labels.union(upValue, leftValue);
+					}
+					labels.grow(root, 1);
+				}
+
+				labels.mark(root, rowEdges | ((y == 0) ? LEFT_EDGE : 0) | ((y == cols - 1) ? RIGHT_EDGE : 0));
+				out[y] = root;
+			}
+		}
+	}
+
+	/**
+	 * Count clusters, which don't reach the current row,
+	 * and move clusters of the current row to labels 1..m.
+	 */
+	private void finishRow()
+	{
+		final int count = labels.getCount();
+		int root, clusters = 0;
+
+		// Sites of each cluster: sites of this row plus sites carried by merged labels
+		for(int l = 1 ; l <= count ; l++)
+		{
+			totals[l] = 0;
+			compactMap[l] = 0;
+		}
+		for(int l = 1 ; l <= count ; l++)
+		{
+			root = labels.find(l);
+			totals[root] += carried[l];
+			if(root == l) totals[root] += labels.getSize(root);
+		}
+
+		// Number clusters of the current row
+		for(int y = 0 ; y < cols ; y++)
+		{
+			if(current[y] == 0) continue;
+			root = labels.find(current[y]);
+			if(compactMap[root] == 0) compactMap[root] = ++clusters;
+			current[y] = compactMap[root];
+		}
+
+		// Complete other clusters
+		for(int l = 1 ; l <= count ; l++)
+		{
+			if(labels.isRoot(l) && compactMap[l] == 0)
+			{
+				TwoDimensionalPercolation percolation = ofEdges(labels.getFlags(l));
+				statistics.add(totals[l], percolation != NONE);
+				byX |= percolation.isByX();
+				byY |= percolation.isByY();
+			}
+		}
+
+		// Recycle labels: cluster m of the row gets label m with its sites and edges
+		for(int l = 1 ; l <= count ; l++)
+		{
+			if(labels.isRoot(l) && compactMap[l] != 0)
+			{
+				compactSites[compactMap[l]] = totals[l];
+				compactEdges[compactMap[l]] = labels.getFlags(l);
+			}
+		}
+		labels.clear();
+		for(int m = 1 ; m <= clusters ; m++)
+		{
+			labels.mark(labels.makeSet(0), compactEdges[m]);
+			carried[m] = compactSites[m];
+		}
+
+		int[] tmp = previous;
+		previous = current;
+		current = tmp;
+	}
+
+	/**
+	 * @return Kind of percolation of the last streamed lattice.
+	 */
+	public TwoDimensionalPercolation getPercolation(){
+		return of(byX, byY);
+	}
+
+	/**
+	 * @return Cluster statistics of the last streamed lattice.
+	 */
+	public ClusterStatistics getStatistics(){
+		return statistics;
+	}
+
+	/**
+	 * @return Count of rows of the last streamed lattice.
+	 */
+	public long getRows(){
+		return rows;
+	}
+}
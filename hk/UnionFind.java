@@ -0,0 +1,148 @@
+package hk;
+
+import java.util.Arrays;
+
+/**
+ * Growable table of cluster labels with union by size and path halving.
+ * Labels start from 1, because zero marks an empty cell.
+ * Root of each cluster keeps its size and bit flags, which are joined on union.
+ */
+public class UnionFind
+{
+	private int[] parents;
+	private int[] sizes;
+	private int[] flags;
+	private int count = 0;
+
+	public UnionFind()
+	{
+		this(64);
+	}
+
+	/**
+	 * @param capacity expected count of labels.
+	 */
+	public UnionFind(int capacity)
+	{
+		parents = new int[Math.max(capacity, 1) + 1];
+		sizes = new int[parents.length];
+		flags = new int[parents.length];
+	}
+
+	/**
+	 * Forget all labels. Allocated memory is kept for the next use.
+	 */
+	public void clear()
+	{
+		count = 0;
+	}
+
+	/**
+	 * Create new label.
+	 * @param size initial size of the cluster.
+	 * @return New label.
+	 */
+	public int makeSet(int size)
+	{
+		if(++count == parents.length)
+		{
+			int capacity = parents.length + (parents.length >> 1) + 1;
+			parents = Arrays.copyOf(parents, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+		parents[count] = count;
+		sizes[count] = size;
+		flags[count] = 0;
+		return count;
+	}
+
+	/**
+	 * Search for root label of the cluster.
+	 * @param label any label of the cluster.
+	 * @return Root label.
+	 */
+	public int find(int label)
+	{
+		final int[] parents = this.parents;
+		while(label != parents[label])
+		{
+			label = parents[label] = parents[parents[label]];
+		}
+		return label;
+	}
+
+	/**
+	 * Merge two clusters into one. The smaller tree is linked under the larger one.
+	 * @param first,second labels of the clusters.
+	 * @return Root label of resulting cluster.
+	 */
+	public int union(int first, int second)
+	{
+		first = find(first);
+		second = find(second);
+		if(first == second) return first;
+
+		if(sizes[first] < sizes[second])
+		{
+			int tmp = first;
+			first = second;
+			second = tmp;
+		}
+		parents[second] = first;
+		sizes[first] += sizes[second];
+		flags[first] |= flags[second];
+		return first;
+	}
+
+	/**
+	 * Add sites to the cluster.
+	 * @param root root label of the cluster.
+	 * @param delta count of the new sites.
+	 */
+	public void grow(int root, int delta)
+	{
+		sizes[root] += delta;
+	}
+
+	/**
+	 * Set flags of the cluster.
+	 * @param root root label of the cluster.
+	 * @param flags set bits.
+	 */
+	public void mark(int root, int flags)
+	{
+		this.flags[root] |= flags;
+	}
+
+	/**
+	 * @param label any label of the cluster.
+	 * @return Flags of the cluster.
+	 */
+	public int getFlags(int label)
+	{
+		return flags[find(label)];
+	}
+
+	/**
+	 * @param label any label of the cluster.
+	 * @return Count of sites in the cluster.
+	 */
+	public int getSize(int label)
+	{
+		return sizes[find(label)];
+	}
+
+	public boolean isRoot(int label)
+	{
+		return parents[label] == label;
+	}
+
+	/**
+	 * @return Count of created labels.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+}
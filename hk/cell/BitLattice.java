@@ -0,0 +1,159 @@
+package hk.cell;
+
+import java.util.Arrays;
+
+/**
+ * Bit-packed occupancy lattice. Each row starts from a new word,
+ * so site (x, y) is bit y % 64 of word x * wordsPerRow + y / 64.
+ * Bits beyond the last column are always zero.
+ */
+public class BitLattice
+{
+	private final int rows, cols;
+	private final int wordsPerRow;
+	private final long[] words;
+
+	/**
+	 * Construct empty lattice.
+	 * @param rows,cols sizes of the lattice.
+	 */
+	public BitLattice(int rows, int cols)
+	{
+		if(rows < 1 || cols < 1 || (long)rows * ((cols + 63) >>> 6) > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException();
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.wordsPerRow = (cols + 63) >>> 6;
+		this.words = new long[rows * wordsPerRow];
+	}
+
+	/**
+	 * Wrap the words into the lattice. The words aren't copied.
+	 * @param rows,cols sizes of the lattice.
+	 * @param words bit-packed rows, the array may be longer than the lattice.
+	 */
+	public BitLattice(int rows, int cols, long[] words)
+	{
+		if(rows < 1 || cols < 1 || (long)rows * ((cols + 63) >>> 6) > words.length)
+		{
+			throw new IllegalArgumentException();
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.wordsPerRow = (cols + 63) >>> 6;
+		this.words = words;
+	}
+
+	/**
+	 * Construct lattice, where non-zero cells of the grid are occupied.
+	 * @param grid source grid.
+	 */
+	public BitLattice(CellGrid grid)
+	{
+		this(grid.getRows(), grid.getCols());
+		final int[] values = grid.getValues();
+		for(int i = 0, index = 0 ; i < rows ; i++)
+		{
+			for(int j = 0 ; j < cols ; j++)
+			{
+				if(values[index++] != 0) set(i, j, true);
+			}
+		}
+	}
+
+	/**
+	 * @return Copy of the lattice, which doesn't share words with this one.
+	 */
+	public BitLattice copy()
+	{
+		return new BitLattice(rows, cols, Arrays.copyOf(words, rows * wordsPerRow));
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	public int getWordsPerRow(){
+		return wordsPerRow;
+	}
+
+	/**
+	 * @return Backing array of the lattice.
+	 */
+	public long[] getWords(){
+		return words;
+	}
+
+	/**
+	 * @param x row of the lattice.
+	 * @return Index of the first word of the row in the backing array.
+	 */
+	public int getRowOffset(int x){
+		return x * wordsPerRow;
+	}
+
+	public boolean get(int x, int y){
+		return (words[x * wordsPerRow + (y >>> 6)] & (1L << y)) != 0;
+	}
+
+	public void set(int x, int y, boolean occupied)
+	{
+		int index = x * wordsPerRow + (y >>> 6);
+		if(occupied)
+		{
+			words[index] |= 1L << y;
+		}
+		else
+		{
+			words[index] &= ~(1L << y);
+		}
+	}
+
+	/**
+	 * Search for the next occupied site of the row. Empty words are skipped at once.
+	 * @param x row of the lattice.
+	 * @param from first column for searching.
+	 * @param to column after the last one for searching.
+	 * @return Column of the occupied site or {@code to} if there is no such site.
+	 */
+	public int nextSetBit(int x, int from, int to)
+	{
+		if(from >= to) return to;
+
+		final int base = x * wordsPerRow;
+		int w = from >>> 6;
+		long word = words[base + w] & (-1L << from);
+		while(word == 0)
+		{
+			if((++w << 6) >= to) return to;
+			word = words[base + w];
+		}
+
+		int y = (w << 6) + Long.numberOfTrailingZeros(word);
+		return (y < to) ? y : to;
+	}
+
+	/**
+	 * @return Count of occupied sites.
+	 */
+	public long count()
+	{
+		long result = 0;
+		for(long word : words)
+		{
+			result += Long.bitCount(word);
+		}
+		return result;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(words, 0L);
+	}
+}
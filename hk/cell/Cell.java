@@ -21,6 +21,6 @@ public class Cell
 
 	@Override
 	public String toString(){
-		return Integer.toString(value);
+		return Integer.toString(getValue());
 	}
 }
@@ -0,0 +1,89 @@
+package hk.cell;
+
+/**
+ * Row-major primitive storage of lattice cell values.
+ * Cell (x, y) lives at index x * cols + y of the backing array.
+ */
+public class CellGrid
+{
+	private final int rows, cols;
+	private final int[] values;
+
+	/**
+	 * Construct zero filled grid.
+	 * @param rows,cols sizes of the grid.
+	 */
+	public CellGrid(int rows, int cols)
+	{
+		if(rows < 1 || cols < 1 || (long)rows * cols > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException();
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.values = new int[rows * cols];
+	}
+
+	/**
+	 * Construct grid from values of given cells.
+	 * @param cells source cells.
+	 */
+	public CellGrid(Cell[][] cells)
+	{
+		this(cells.length, cells[0].length);
+		for(int i = 0 ; i < rows ; i++)
+		{
+			for(int j = 0 ; j < cols ; j++)
+			{
+				values[i * cols + j] = cells[i][j].getValue();
+			}
+		}
+	}
+
+	/**
+	 * @return Copy of the grid, which doesn't share values with this one.
+	 */
+	public CellGrid copy()
+	{
+		CellGrid grid = new CellGrid(rows, cols);
+		System.arraycopy(values, 0, grid.values, 0, values.length);
+		return grid;
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	/**
+	 * @return Backing array of the grid.
+	 */
+	public int[] getValues(){
+		return values;
+	}
+
+	public int index(int x, int y){
+		return x * cols + y;
+	}
+
+	public int get(int x, int y){
+		return values[x * cols + y];
+	}
+
+	public void set(int x, int y, int value){
+		values[x * cols + y] = value;
+	}
+
+	/**
+	 * Get the cell view of the grid element.
+	 * Writing to the view changes the grid.
+	 * @param x,y coordinates of the cell.
+	 * @return Cell which is backed by this grid.
+	 */
+	public Cell getCell(int x, int y){
+		return new CellView(this, index(x, y));
+	}
+}
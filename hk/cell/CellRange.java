@@ -11,72 +11,191 @@ public class CellRange implements Iterable<Cell>
 {
 	private int startX, startY;
 	private int endX, endY;
-	private Cell[][] origin;
+	private CellGrid origin;
 	public static final Cell ZERO_CELL = new Cell(0);
 
 	/**
-	 * Iterator for this class.
+	 * Cursor over cells of the slice, which is moved in place row by row:
+	 * <pre>
+	 * for(Cursor c = range.cursor() ; c.nextRow() ; )
+	 *     for(int i = c.getRowStart() ; i < c.getRowEnd() ; i++)
+	 *         values[i] ...
+	 * </pre>
+	 * or cell by cell with {@link #nextColumn()}.
+	 * Indices point into the backing array of the grid.
 	 */
-	public class CellIterator implements Iterator<Cell>
+	public class Cursor
 	{
-		private int currentX, currentY;
-		private int iterationNum = 0;
+		private int currentX = startX - 1, currentY;
+		private int index, rowStart, rowEnd;
 
-		public CellIterator()
+		/**
+		 * Move to the start of the next row.
+		 * @return False, if there are no more rows.
+		 */
+		public boolean nextRow()
 		{
-			this.currentX = startX;
-			this.currentY = startY;
+			if(++currentX >= endX) return false;
+			rowStart = origin.index(currentX, startY);
+			rowEnd = rowStart + (endY - startY);
+			index = rowStart - 1;
+			currentY = startY - 1;
+			return true;
+		}
+
+		/**
+		 * Move to the next cell of the row.
+		 * @return False, if the row is over.
+		 */
+		public boolean nextColumn()
+		{
+			if(index + 1 >= rowEnd) return false;
+			++index;
+			++currentY;
+			return true;
+		}
+
+		public int getX(){
+			return currentX;
+		}
+
+		public int getY(){
+			return currentY;
+		}
+
+		/**
+		 * @return Index of the current cell.
+		 */
+		public int getIndex(){
+			return index;
+		}
+
+		/**
+		 * @return Index of the first cell of the row.
+		 */
+		public int getRowStart(){
+			return rowStart;
+		}
+
+		/**
+		 * @return Index after the last cell of the row.
+		 */
+		public int getRowEnd(){
+			return rowEnd;
+		}
+
+		/**
+		 * @return Offset from index of the cell to index of its north neighbor.
+		 */
+		public int getNorthOffset(){
+			return -origin.getCols();
+		}
+
+		/**
+		 * @return Offset from index of the cell to index of its west neighbor.
+		 */
+		public int getWestOffset(){
+			return -1;
+		}
+
+		public boolean hasNorth(){
+			return currentX > startX;
+		}
+
+		public boolean hasWest(){
+			return index > rowStart;
+		}
+
+		/**
+		 * @return Value of the north neighbor or zero outside of the slice.
+		 */
+		public int getNorth(){
+			return (currentX > startX) ? origin.getValues()[index - origin.getCols()] : 0;
+		}
+
+		/**
+		 * @return Value of the west neighbor or zero outside of the slice.
+		 */
+		public int getWest(){
+			return (index > rowStart) ? origin.getValues()[index - 1] : 0;
+		}
+
+		public int get(){
+			return origin.getValues()[index];
 		}
 
+		public void set(int value){
+			origin.getValues()[index] = value;
+		}
+	}
+
+	/**
+	 * Iterator for this class. It is an adapter of {@link Cursor},
+	 * which returns cell views.
+	 */
+	public class CellIterator implements Iterator<Cell>
+	{
+		private final Cursor cursor = new Cursor();
+		private final int area = (endX - startX) * (endY - startY);
+		private int iterationNum = 0;
+
 		@Override
 		public boolean hasNext()
 		{
-			return (currentY < endY) && (currentX < endX) &&
-				(iterationNum < ((endY - startY) * (endX - startX)));
+			return iterationNum < area;
 		}
 
 		@Override
 		public Cell next()
 		{
 			// Go to next iteration
-			int diff = iterationNum % (endY - startY);
-
-			currentX = startX + (iterationNum - diff) / (endY - startY);
-			currentY = startY + diff;
+			if(!cursor.nextColumn())
+			{
+				cursor.nextRow();
+				cursor.nextColumn();
+			}
 
 			++iterationNum;
 
-			return origin[currentX][currentY];
+			return origin.getCell(cursor.getX(), cursor.getY());
 		}
 
 		@Override
 		public void remove(){
-			origin[currentX][currentY] = null;
+			cursor.set(0);
 		}
 
 		public Cell getNorth()
 		{
-			return (currentX > startX) ? origin[currentX - 1][currentY] : ZERO_CELL;
+			return cursor.hasNorth() ? origin.getCell(cursor.getX() - 1, cursor.getY()) : ZERO_CELL;
 		}
 
 		public Cell getWest()
 		{
-			return (currentY > startY) ? origin[currentX][currentY - 1] : ZERO_CELL;
+			return cursor.hasWest() ? origin.getCell(cursor.getX(), cursor.getY() - 1) : ZERO_CELL;
 		}
 
 		public Cell get()
 		{
-			return origin[currentX][currentY];
+			return origin.getCell(cursor.getX(), cursor.getY());
 		}
 
 		public void set(Cell value)
 		{
-			origin[currentX][currentY] = value;
+			cursor.set(value.getValue());
 		}
 
 		public void set(int value)
 		{
-			origin[currentX][currentY].setValue(value);
+			cursor.set(value);
+		}
+
+		/**
+		 * @return Index of the current cell in the backing array of the grid.
+		 */
+		public int getIndex()
+		{
+			return cursor.getIndex();
 		}
 
 		public int getIterationNumber()
@@ -85,6 +204,13 @@ public class CellRange implements Iterable<Cell>
 		}
 	}
 
+	/**
+	 * @return Cursor before the first row of the slice.
+	 */
+	public Cursor cursor(){
+		return new Cursor();
+	}
+
 	@Override
 	public Iterator<Cell> iterator(){
 		return new CellIterator();
@@ -94,9 +220,9 @@ public class CellRange implements Iterable<Cell>
 	 * Construct the slice of whole lattice.
 	 * @param origin original lattice.
 	 */
-	public CellRange(Cell[][] origin)
+	public CellRange(CellGrid origin)
 	{
-		this(origin, 0, 0, origin.length, origin[0].length);
+		this(origin, 0, 0, origin.getRows(), origin.getCols());
 	}
 
 	/**
@@ -105,9 +231,10 @@ public class CellRange implements Iterable<Cell>
 	 * @param startX,startY left-top corner of the slice.
 	 * @param endX,endY right-bottom corner of the slice.
 	 */
-	public CellRange(Cell[][] origin, int startX, int startY, int endX, int endY)
+	public CellRange(CellGrid origin, int startX, int startY, int endX, int endY)
 	{
 		assert startX >= 0 && startY >= 0 && endX >= 0 && endY >= 0;
+		assert endX <= origin.getRows() && endY <= origin.getCols();
 		this.startX = startX;
 		this.startY = startY;
 		this.endX = endX;
@@ -131,20 +258,32 @@ public class CellRange implements Iterable<Cell>
 		return endX;
 	}
 
-	public static CellRange getEdge(Cell[][] lattice,
+	public CellGrid getGrid(){
+		return origin;
+	}
+
+	public int getRows(){
+		return endX - startX;
+	}
+
+	public int getCols(){
+		return endY - startY;
+	}
+
+	public static CellRange getEdge(CellGrid lattice,
         TwoDimensionalPercolation byWhat, boolean inStart)
 	{
 		int where;
 		switch(byWhat)
 		{
 			case BY_X:
-				where = inStart ? 0 : (lattice.length - 1);
-				return new CellRange(lattice, 0, where, lattice.length, where + 1);
+				where = inStart ? 0 : (lattice.getCols() - 1);
+				return new CellRange(lattice, 0, where, lattice.getRows(), where + 1);
 			case BY_Y:
-				where = inStart ? 0 : (lattice[0].length - 1);
-				return new CellRange(lattice, where, 0, where + 1, lattice[0].length);
+				where = inStart ? 0 : (lattice.getRows() - 1);
+				return new CellRange(lattice, where, 0, where + 1, lattice.getCols());
 		}
 
 		throw new IllegalArgumentException();
 	}
-}
\ No newline at end of file
+}
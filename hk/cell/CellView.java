@@ -0,0 +1,27 @@
+package hk.cell;
+
+/**
+ * Cell which reads and writes its value through the grid.
+ */
+class CellView extends Cell
+{
+	private final CellGrid grid;
+	private final int index;
+
+	CellView(CellGrid grid, int index)
+	{
+		this.grid = grid;
+		this.index = index;
+	}
+
+	@Override
+	public int getValue(){
+		return grid.getValues()[index];
+	}
+
+	@Override
+	public void setValue(int value)
+	{
+		grid.getValues()[index] = value;
+	}
+}
@@ -0,0 +1,128 @@
+package hk.cell;
+
+/**
+ * Counter-based random field, which isn't stored: the threshold of the site is the hash
+ * of the key and the index of the site, so it's computed in O(1) by any thread in any order.
+ * Word w of the field is the SplitMix64 finalizer of key + (w + 1) * gamma,
+ * its low and high halves are 32-bit thresholds of sites 2w and 2w + 1.
+ * So the field is the same as 32-bit {@link ThresholdField} filled by SplitMix64 with the key as the seed.
+ */
+public class HashedField implements RandomField
+{
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final double THRESHOLD_SCALE = 1.0 / (1L << 32);
+
+	private final int rows, cols;
+	private long key;
+
+	/**
+	 * @param rows,cols sizes of the lattice.
+	 * @param key key of the field, for example the seed of the sample.
+	 */
+	public HashedField(int rows, int cols, long key)
+	{
+		if(rows < 1 || cols < 1) throw new IllegalArgumentException();
+		this.rows = rows;
+		this.cols = cols;
+		this.key = key;
+	}
+
+	@Override
+	public int getRows(){
+		return rows;
+	}
+
+	@Override
+	public int getCols(){
+		return cols;
+	}
+
+	public long getKey(){
+		return key;
+	}
+
+	/**
+	 * Replace the field by the field of other key. Nothing is computed.
+	 * @param key key of the field.
+	 */
+	public void setKey(long key){
+		this.key = key;
+	}
+
+	private long hash(long word)
+	{
+		long z = key + (word + 1) * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param site index of the site in the row-major order.
+	 * @return Threshold as the unsigned 32-bit value.
+	 */
+	private long getThreshold(long site)
+	{
+		long word = hash(site >>> 1);
+		return ((site & 1L) == 0L ? word : word >>> 32) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public double get(int x, int y)
+	{
+		return getThreshold((long)x * cols + y) * THRESHOLD_SCALE;
+	}
+
+	/**
+	 * @param chance chance of the site to be occupied.
+	 * @return Count of 32-bit thresholds, which are less than the chance.
+	 */
+	private static long getLevel(double chance)
+	{
+		if(chance <= 0.0) return 0L;
+		if(chance >= 1.0) return 1L << 32;
+		return (long)Math.ceil(chance * (1L << 32));
+	}
+
+	@Override
+	public void occupy(BitLattice lattice, double chance)
+	{
+		occupy(lattice, chance, 0, rows);
+	}
+
+	@Override
+	public void occupy(BitLattice lattice, double chance, int firstRow, int lastRow)
+	{
+		if(lattice.getRows() != rows || lattice.getCols() != cols ||
+			firstRow < 0 || lastRow > rows || firstRow > lastRow)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		final long[] words = lattice.getWords();
+		final long level = getLevel(chance);
+		long site = (long)firstRow * cols, threshold;
+		int index = lattice.getRowOffset(firstRow);
+		long word;
+		int end;
+
+		// One hash gives thresholds of two sites, the range may start from the second one
+		long hash = hash(site >>> 1);
+
+		for(int i = firstRow ; i < lastRow ; i++)
+		{
+			for(int j = 0 ; j < cols ; j += 64)
+			{
+				end = Math.min(64, cols - j);
+				word = 0L;
+				for(int k = 0 ; k < end ; k++, site++)
+				{
+					if((site & 1L) == 0L) hash = hash(site >>> 1);
+					threshold = ((site & 1L) == 0L ? hash : hash >>> 32) & 0xFFFFFFFFL;
+					word |= ((threshold - level) >>> 63) << k;
+				}
+				words[index++] = word;
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package hk.cell;
+
+/**
+ * Random thresholds of sites, which give occupancy lattices for any chance.
+ * Site is occupied at the chance, if its threshold is less than the chance.
+ */
+public interface RandomField
+{
+	int getRows();
+
+	int getCols();
+
+	/**
+	 * @param x,y coordinates of the site.
+	 * @return Threshold of the site from 0 inclusive to 1 exclusive.
+	 */
+	double get(int x, int y);
+
+	/**
+	 * Occupy sites of the lattice.
+	 * @param lattice lattice with the same sizes.
+	 * @param chance chance of the site to be occupied.
+	 */
+	void occupy(BitLattice lattice, double chance);
+
+	/**
+	 * Occupy sites of the rows, other rows of the lattice aren't changed.
+	 * Rows start from new words, so different rows may be occupied by different threads.
+	 * @param lattice lattice with the same sizes.
+	 * @param chance chance of the site to be occupied.
+	 * @param firstRow,lastRow range of rows, the last row is excluded.
+	 */
+	void occupy(BitLattice lattice, double chance, int firstRow, int lastRow);
+}
@@ -0,0 +1,156 @@
+package hk.cell;
+
+import hk.util.RandomSource;
+
+/**
+ * Random field of the lattice with fixed-point thresholds of 16 or 32 bits per site.
+ * Site is occupied at the chance, if its threshold is less than the chance,
+ * so one field gives nested lattices for all chances.
+ * Thresholds are multiples of 2^-bits, 16-bit thresholds are enough for chances with 4 decimal digits.
+ */
+public class ThresholdField implements RandomField
+{
+	private final int rows, cols, bits;
+	private final char[] shortThresholds;
+	private final int[] intThresholds;
+
+	/**
+	 * Construct the field with zero thresholds.
+	 * @param rows,cols sizes of the lattice.
+	 * @param bits bits per threshold, 16 or 32.
+	 */
+	public ThresholdField(int rows, int cols, int bits)
+	{
+		if(rows < 1 || cols < 1 || (long)rows * cols > Integer.MAX_VALUE - 8 || (bits != 16 && bits != 32))
+		{
+			throw new IllegalArgumentException();
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.bits = bits;
+		shortThresholds = (bits == 16) ? new char[rows * cols] : null;
+		intThresholds = (bits == 32) ? new int[rows * cols] : null;
+	}
+
+	@Override
+	public int getRows(){
+		return rows;
+	}
+
+	@Override
+	public int getCols(){
+		return cols;
+	}
+
+	public int getBits(){
+		return bits;
+	}
+
+	/**
+	 * Fill the field by random thresholds. Each random word gives 64 / bits thresholds.
+	 * @param gen random generator.
+	 */
+	public void fill(RandomSource gen)
+	{
+		long word;
+		int i = 0;
+
+		if(bits == 16)
+		{
+			final char[] thresholds = shortThresholds;
+			for( ; i + 4 <= thresholds.length ; i += 4)
+			{
+				word = gen.nextLong();
+				thresholds[i] = (char)word;
+				thresholds[i + 1] = (char)(word >>> 16);
+				thresholds[i + 2] = (char)(word >>> 32);
+				thresholds[i + 3] = (char)(word >>> 48);
+			}
+			if(i < thresholds.length)
+			{
+				for(word = gen.nextLong() ; i < thresholds.length ; i++, word >>>= 16)
+				{
+					thresholds[i] = (char)word;
+				}
+			}
+		}
+		else
+		{
+			final int[] thresholds = intThresholds;
+			for( ; i + 2 <= thresholds.length ; i += 2)
+			{
+				word = gen.nextLong();
+				thresholds[i] = (int)word;
+				thresholds[i + 1] = (int)(word >>> 32);
+			}
+			if(i < thresholds.length) thresholds[i] = (int)gen.nextLong();
+		}
+	}
+
+	@Override
+	public double get(int x, int y)
+	{
+		int index = x * cols + y;
+		long value = (bits == 16) ? shortThresholds[index] : intThresholds[index] & 0xFFFFFFFFL;
+		return value / (double)(1L << bits);
+	}
+
+	/**
+	 * @param chance chance of the site to be occupied.
+	 * @return Count of threshold values, which are less than the chance.
+	 */
+	private long getLevel(double chance)
+	{
+		if(chance <= 0.0) return 0L;
+		if(chance >= 1.0) return 1L << bits;
+		return (long)Math.ceil(chance * (1L << bits));
+	}
+
+	@Override
+	public void occupy(BitLattice lattice, double chance)
+	{
+		occupy(lattice, chance, 0, rows);
+	}
+
+	@Override
+	public void occupy(BitLattice lattice, double chance, int firstRow, int lastRow)
+	{
+		if(lattice.getRows() != rows || lattice.getCols() != cols ||
+			firstRow < 0 || lastRow > rows || firstRow > lastRow)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		final long[] words = lattice.getWords();
+		final long level = getLevel(chance);
+		int site = firstRow * cols, index = lattice.getRowOffset(firstRow);
+		long word;
+		int end;
+
+		// Sign bit of the difference is the occupancy of the site, so there are no branches
+		for(int i = firstRow ; i < lastRow ; i++)
+		{
+			for(int j = 0 ; j < cols ; j += 64, site += end)
+			{
+				end = Math.min(64, cols - j);
+				word = 0L;
+				if(bits == 16)
+				{
+					final int shortLevel = (int)level;
+					for(int k = 0 ; k < end ; k++)
+					{
+						word |= (long)((shortThresholds[site + k] - shortLevel) >>> 31) << k;
+					}
+				}
+				else
+				{
+					for(int k = 0 ; k < end ; k++)
+					{
+						word |= (((intThresholds[site + k] & 0xFFFFFFFFL) - level) >>> 63) << k;
+					}
+				}
+				words[index++] = word;
+			}
+		}
+	}
+}
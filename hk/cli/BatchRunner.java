@@ -0,0 +1,722 @@
+package hk.cli;
+
+import hk.ClusterStatistics;
+import hk.Lattice;
+import hk.RowSource;
+import hk.Stencil;
+import hk.StencilHoshenKopelman;
+import hk.StreamingHoshenKopelman;
+import hk.cell.BitLattice;
+import hk.experiment.*;
+import hk.util.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line runner of experiments and clusterization for headless machines.
+ * It doesn't use AWT and Swing classes. Results are written as CSV or JSON.
+ * <pre>
+ * experiment --rows R --cols C --min P --max P --step S [--count N] [--seed S] [--threads N]
+ *            [--engine SWEEP|NEWMAN_ZIFF|REFINEMENT] [--precision P]
+ *            [--checkpoint FILE [--checkpoint-interval SECONDS]]
+ *            [--target-width W [--confidence C]] [--time-budget SECONDS]
+ *            [--generator SPLITMIX64|SPLITTABLE|XOSHIRO256PP|JDK] [--threshold-bits 16|32] [--field stored|hashed]
+ * cluster    (--input FILE | --rows R --cols C --chance P [--seed S] [--generator G]) [--threads N]
+ *            [--streaming | --export FILE]
+ * convert    --input TEXT --output BINARY
+ * stencil    --dims D1xD2[x...] --chance P [--stencil NEAREST|FULL] [--seed S] [--generator G]
+ * </pre>
+ * Stencil command labels random hypercubic lattices of any dimension.
+ * Commands take [--format csv|json], experiment, cluster and stencil commands also take [--output FILE],
+ * results are written to the standard output by default. Unknown options are rejected.
+ * Labels of clusters are exported in binary format to files with .bin extension, otherwise in text format.
+ */
+public class BatchRunner
+{
+	private static final String USAGE =
+			"Usage: BatchRunner experiment --rows R --cols C --min P --max P --step S [--count N]" +
+			" [--seed S] [--threads N] [--engine SWEEP|NEWMAN_ZIFF|REFINEMENT] [--precision P]" +
+			" [--checkpoint FILE [--checkpoint-interval SECONDS]] [--target-width W [--confidence C]]" +
+			" [--time-budget SECONDS] [--generator SPLITMIX64|SPLITTABLE|XOSHIRO256PP|JDK] [--threshold-bits 16|32]" +
+			" [--field stored|hashed] [--format csv|json] [--output FILE]" + System.lineSeparator() +
+			"       BatchRunner cluster (--input FILE | --rows R --cols C --chance P [--seed S] [--generator G])" +
+			" [--threads N] [--streaming | --export FILE] [--format csv|json] [--output FILE]" + System.lineSeparator() +
+			"       BatchRunner convert --input TEXT --output BINARY [--format csv|json]" + System.lineSeparator() +
+			"       BatchRunner stencil --dims D1xD2[x...] --chance P [--stencil NEAREST|FULL] [--seed S]" +
+			" [--generator G] [--format csv|json] [--output FILE]";
+
+	private static final Set<String> EXPERIMENT_OPTIONS = new HashSet<>(Arrays.asList(
+			"rows", "cols", "min", "max", "step", "count", "seed", "threads", "engine", "precision",
+			"checkpoint", "checkpoint-interval", "target-width", "confidence", "time-budget",
+			"generator", "threshold-bits", "field", "format", "output"));
+	private static final Set<String> CLUSTER_OPTIONS = new HashSet<>(Arrays.asList(
+			"input", "rows", "cols", "chance", "seed", "generator", "threads", "export", "format", "output"));
+	private static final Set<String> CONVERT_OPTIONS = new HashSet<>(Arrays.asList(
+			"input", "output", "format"));
+	private static final Set<String> STENCIL_OPTIONS = new HashSet<>(Arrays.asList(
+			"dims", "chance", "stencil", "seed", "generator", "format", "output"));
+
+	private final String command;
+	private final Map<String, String> options = new HashMap<>();
+	private boolean isStreaming = false;
+
+	/**
+	 * @param args command and its options.
+	 */
+	public BatchRunner(String[] args)
+	{
+		if(args.length == 0) throw new IllegalArgumentException("Command is missing.");
+		command = args[0];
+
+		for(int i = 1 ; i < args.length ; i++)
+		{
+			if(!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument " + args[i]);
+			if(args[i].equals("--streaming"))
+			{
+				isStreaming = true;
+				continue;
+			}
+			if(i + 1 == args.length) throw new IllegalArgumentException("Value of " + args[i] + " is missing.");
+			options.put(args[i].substring(2), args[++i]);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		try
+		{
+			new BatchRunner(args).run();
+		}
+		catch(LatticeFormatException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		catch(IOException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run the command and write its result.
+	 * @throws IOException if files can't be read or written.
+	 */
+	public void run() throws IOException
+	{
+		switch(command)
+		{
+			case "experiment":
+				checkOptions(EXPERIMENT_OPTIONS, false);
+				runExperiment();
+				break;
+			case "cluster":
+				checkOptions(CLUSTER_OPTIONS, true);
+				runClusterization();
+				break;
+			case "convert":
+				checkOptions(CONVERT_OPTIONS, false);
+				runConversion();
+				break;
+			case "stencil":
+				checkOptions(STENCIL_OPTIONS, false);
+				runStencil();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown command " + command);
+		}
+	}
+
+	/**
+	 * Reject options, which the command doesn't take, so misspelled ones aren't ignored.
+	 * @param names names of options of the command.
+	 * @param isStreamingAllowed whether the command takes --streaming flag.
+	 */
+	private void checkOptions(Set<String> names, boolean isStreamingAllowed)
+	{
+		for(String name : options.keySet())
+		{
+			if(!names.contains(name)) throw new IllegalArgumentException("Unknown option --" + name);
+		}
+		if(isStreaming && !isStreamingAllowed) throw new IllegalArgumentException("Unknown option --streaming");
+	}
+
+	private void runExperiment() throws IOException
+	{
+		int rows = getInt("rows", null), cols = getInt("cols", null);
+		double minChance = getDouble("min", null), maxChance = getDouble("max", null);
+		double step = getDouble("step", null);
+
+		ExperimentOnPercolation experiment = new ExperimentOnPercolation(new Pair<>(rows, cols),
+				new Pair<>(minChance, maxChance), step);
+		experiment.setCountOfExperiments(getInt("count", 1));
+		experiment.setThreads(getInt("threads", Runtime.getRuntime().availableProcessors()));
+		if(options.containsKey("seed")) experiment.setSeed(getLong("seed"));
+		if(options.containsKey("engine")) experiment.setEngine(getEngine());
+		if(options.containsKey("precision")) experiment.setPrecision(getDouble("precision", null));
+		if(options.containsKey("generator")) experiment.setGenerator(getGenerator());
+		if(options.containsKey("threshold-bits")) experiment.setThresholdBits(getInt("threshold-bits", null));
+		if(options.containsKey("field"))
+		{
+			String field = options.get("field");
+			if(!field.equals("stored") && !field.equals("hashed"))
+			{
+				throw new IllegalArgumentException("Unknown field " + field);
+			}
+			experiment.setHashedField(field.equals("hashed"));
+			if(experiment.isHashedField() && (experiment.getGenerator() != RandomSource.Kind.SPLITMIX64 ||
+				experiment.getThresholdBits() != 32))
+			{
+				throw new IllegalArgumentException("Hashed field needs SPLITMIX64 generator and 32-bit thresholds.");
+			}
+		}
+		if(options.containsKey("checkpoint"))
+		{
+			experiment.setCheckpoint(new File(options.get("checkpoint")));
+			experiment.setCheckpointInterval((long)(getDouble("checkpoint-interval", 10.0) * 1000));
+		}
+		else if(options.containsKey("checkpoint-interval"))
+		{
+			throw new IllegalArgumentException("Option --checkpoint-interval requires --checkpoint.");
+		}
+		if(options.containsKey("target-width"))
+		{
+			if(experiment.getEngine() == ExperimentOnPercolation.Engine.SWEEP)
+			{
+				throw new IllegalArgumentException("Option --target-width requires NEWMAN_ZIFF or REFINEMENT engine.");
+			}
+			experiment.setTargetHalfWidth(getDouble("target-width", null));
+			experiment.setConfidence(getDouble("confidence", 0.95));
+		}
+		else if(options.containsKey("confidence"))
+		{
+			throw new IllegalArgumentException("Option --confidence requires --target-width.");
+		}
+		if(options.containsKey("time-budget"))
+		{
+			experiment.setTimeBudget((long)(getDouble("time-budget", null) * 1000));
+		}
+
+		long start = System.nanoTime();
+		experiment.run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("command", command);
+		report.put("rows", rows);
+		report.put("cols", cols);
+		report.put("minChance", minChance);
+		report.put("maxChance", maxChance);
+		report.put("step", step);
+		report.put("samples", experiment.getCountOfExperiments());
+		report.put("resumedSamples", experiment.getResumedSamples());
+		report.put("mergedSamples", experiment.getMergedSamples());
+		report.put("targetReached", experiment.isTargetReached());
+		report.put("seed", experiment.getSeed());
+		report.put("threads", experiment.getThreads());
+		report.put("engine", experiment.getEngine().name());
+		report.put("generator", experiment.getGenerator().name());
+		report.put("thresholdBits", experiment.getThresholdBits());
+		report.put("field", experiment.isHashedField() ? "hashed" : "stored");
+		report.put("seconds", seconds);
+
+		Statistic statistic = experiment.getStatistic();
+		List<Map<String, Object>> thresholds = new ArrayList<>();
+		for(TwoDimensionalPercolation key : TwoDimensionalPercolation.values())
+		{
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("kind", key.name());
+			row.put("count", statistic.getCount(key));
+			row.put("min", statistic.getMinThreshold(key));
+			row.put("average", statistic.getAverageThreshold(key));
+			row.put("max", statistic.getMaxThreshold(key));
+			if(statistic.hasSampleThresholds())
+			{
+				row.put("standardError", statistic.getStandardError(key));
+				row.put("halfWidth", statistic.getConfidenceHalfWidth(key, experiment.getConfidence()));
+			}
+			thresholds.add(row);
+		}
+		if(statistic.getFirstCount() > 0L)
+		{
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("kind", "FIRST");
+			row.put("count", statistic.getFirstCount());
+			row.put("min", statistic.getFirstMinThreshold());
+			row.put("average", statistic.getFirstAverageThreshold());
+			row.put("max", statistic.getFirstMaxThreshold());
+			if(statistic.hasSampleThresholds())
+			{
+				row.put("standardError", statistic.getFirstStandardError());
+				row.put("halfWidth", statistic.getFirstConfidenceHalfWidth(experiment.getConfidence()));
+			}
+			thresholds.add(row);
+		}
+
+		ClusterProfile profile = experiment.getClusterProfile();
+		List<Map<String, Object>> points = new ArrayList<>();
+		for(int i = 0 ; profile != null && i < profile.getPoints() ; i++)
+		{
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("chance", profile.getChance(i));
+			row.put("clusters", profile.getAverageClusterCount(i));
+			row.put("largest", profile.getAverageLargest(i));
+			row.put("meanClusterSize", profile.getAverageMeanClusterSize(i));
+			row.put("ensembleMeanClusterSize", profile.getMeanClusterSize(i));
+			List<Object> histogram = new ArrayList<>();
+			for(int b = 0, bins = profile.getSizeBins(i) ; b < bins ; b++)
+			{
+				histogram.add(profile.getAverageCountOfSizeBin(i, b));
+			}
+			row.put("sizeBins", histogram);
+			points.add(row);
+		}
+
+		if(isJson())
+		{
+			report.put("thresholds", thresholds);
+			if(profile != null) report.put("profile", points);
+			write(report, null);
+		}
+		else
+		{
+			// One row for each kind of percolation, parameters are repeated
+			write(report, thresholds);
+		}
+	}
+
+	private void runClusterization() throws IOException
+	{
+		int threads = getInt("threads", Runtime.getRuntime().availableProcessors());
+		String export = options.get("export");
+		if(isStreaming && export != null) throw new IllegalArgumentException("Streamed labels can't be exported.");
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("command", command);
+
+		String input = options.get("input");
+		RowSource source;
+		Closeable closeable = null;
+		int rows;
+		if(input != null)
+		{
+			report.put("input", input);
+			File file = new File(input);
+			if(BinaryLatticeFormat.isBinary(file))
+			{
+				MappedRowSource mapped = new MappedRowSource(file);
+				rows = mapped.getRows();
+				source = mapped;
+				closeable = mapped;
+			}
+			else
+			{
+				TextRowSource text = new TextRowSource(new InputStreamReader(
+						new FileInputStream(file), StandardCharsets.UTF_8));
+				rows = -1;
+				source = text;
+				closeable = text;
+			}
+		}
+		else
+		{
+			rows = getInt("rows", null);
+			double chance = getDouble("chance", null);
+			long seed = options.containsKey("seed") ? getLong("seed") : new Random().nextLong();
+			report.put("chance", chance);
+			report.put("seed", seed);
+			RandomSource.Kind generator = options.containsKey("generator") ?
+					getGenerator() : RandomSource.Kind.SPLITMIX64;
+			report.put("generator", generator.name());
+			source = new RandomRowSource(rows, getInt("cols", null), chance, generator.create(seed));
+		}
+
+		long start = System.nanoTime();
+		ClusterStatistics statistics;
+		TwoDimensionalPercolation percolation;
+		long latticeRows;
+		try
+		{
+			if(isStreaming)
+			{
+				StreamingHoshenKopelman hk = new StreamingHoshenKopelman(source.getCols());
+				hk.run(source);
+				statistics = hk.getStatistics();
+				percolation = hk.getPercolation();
+				latticeRows = hk.getRows();
+			}
+			else
+			{
+				Lattice lattice = new Lattice(readLattice(source, rows));
+				if(threads > 1)
+				{
+					ForkJoinPool pool = new ForkJoinPool(threads);
+					try
+					{
+						lattice.clusterize(pool);
+					}
+					finally
+					{
+						pool.shutdown();
+					}
+				}
+				else
+				{
+					lattice.clusterize();
+				}
+				statistics = lattice.getClusterStatistics();
+				percolation = lattice.checkEdges();
+				latticeRows = lattice.getInitialLattice().getRows();
+				if(export != null) exportLabels(lattice, new File(export));
+			}
+		}
+		finally
+		{
+			if(closeable != null) closeable.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		report.put("rows", latticeRows);
+		report.put("cols", source.getCols());
+		report.put("streaming", isStreaming);
+		report.put("threads", isStreaming ? 1 : threads);
+		report.put("clusters", statistics.getCount());
+		report.put("occupied", statistics.getOccupied());
+		report.put("largest", statistics.getLargest());
+		report.put("meanClusterSize", statistics.getMeanClusterSize());
+		report.put("percolation", percolation.name());
+		report.put("seconds", seconds);
+		write(report, null);
+	}
+
+	private void runConversion() throws IOException
+	{
+		String input = options.get("input"), output = options.get("output");
+		if(input == null || output == null) throw new IllegalArgumentException("Input and output files are required.");
+
+		// Validate the format before the conversion
+		isJson();
+
+		long start = System.nanoTime();
+		int rows;
+		try(Reader reader = new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8))
+		{
+			rows = BinaryLatticeFormat.convert(reader, new File(output));
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("command", command);
+		report.put("input", input);
+		report.put("output", output);
+		report.put("rows", rows);
+		report.put("seconds", seconds);
+		// The output option is the converted lattice, so the report goes to the standard output
+		write(report, null, null);
+	}
+
+	private void runStencil() throws IOException
+	{
+		String dims = options.get("dims");
+		if(dims == null) throw new IllegalArgumentException("Option --dims is required.");
+		String[] parts = dims.split("x");
+		int[] sizes = new int[parts.length];
+		for(int axis = 0 ; axis < parts.length ; axis++)
+		{
+			sizes[axis] = Integer.parseInt(parts[axis]);
+			if(sizes[axis] < 1) throw new IllegalArgumentException("Dimensions must be positive.");
+		}
+		Stencil stencil = getStencil();
+		double chance = getDouble("chance", null);
+		long seed = options.containsKey("seed") ? getLong("seed") : new Random().nextLong();
+		RandomSource.Kind generator = options.containsKey("generator") ? getGenerator() : RandomSource.Kind.SPLITMIX64;
+
+		// Sites are occupied in row-major order
+		StencilHoshenKopelman hk = new StencilHoshenKopelman(stencil, sizes);
+		long[] occupancy = hk.newOccupancy();
+		RandomSource gen = generator.create(seed);
+		for(int index = 0 ; index < hk.getSize() ; index++)
+		{
+			if(gen.nextDouble() < chance) occupancy[index >>> 6] |= 1L << index;
+		}
+
+		long start = System.nanoTime();
+		int clusters = hk.compute(occupancy);
+		ClusterStatistics statistics = new ClusterStatistics();
+		hk.collectStatistics(statistics);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		StringBuilder spanning = new StringBuilder();
+		for(int axis = 0 ; axis < sizes.length ; axis++)
+		{
+			if(!hk.isSpanning(axis)) continue;
+			if(spanning.length() > 0) spanning.append(' ');
+			spanning.append(axis);
+		}
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("command", command);
+		report.put("dims", dims);
+		report.put("stencil", stencil.name());
+		report.put("chance", chance);
+		report.put("seed", seed);
+		report.put("generator", generator.name());
+		report.put("clusters", clusters);
+		report.put("occupied", statistics.getOccupied());
+		report.put("largest", statistics.getLargest());
+		report.put("meanClusterSize", statistics.getMeanClusterSize());
+		report.put("spanningAxes", spanning.toString());
+		report.put("seconds", seconds);
+		write(report, null);
+	}
+
+	private static void exportLabels(Lattice lattice, File file) throws IOException
+	{
+		if(file.getName().toLowerCase(Locale.ROOT).endsWith(".bin"))
+		{
+			try(OutputStream out = new FileOutputStream(file))
+			{
+				lattice.exportBinary(out, true);
+			}
+		}
+		else
+		{
+			try(Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))
+			{
+				lattice.exportText(writer, true);
+			}
+		}
+	}
+
+	/**
+	 * Read all rows of the source into memory.
+	 * @param rows count of rows or -1, if it's unknown.
+	 */
+	private static BitLattice readLattice(RowSource source, int rows) throws IOException
+	{
+		final int wordsPerRow = (source.getCols() + 63) >>> 6;
+		long[] words = new long[wordsPerRow * Math.max(rows, 1)];
+		long[] row = new long[wordsPerRow];
+		int count = 0;
+
+		while(source.nextRow(row))
+		{
+			if((long)(count + 1) * wordsPerRow > words.length)
+			{
+				long length = Math.max((long)words.length * 2, (long)(count + 1) * wordsPerRow);
+				if(length > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Lattice is too large.");
+				words = Arrays.copyOf(words, (int)length);
+			}
+			System.arraycopy(row, 0, words, count * wordsPerRow, wordsPerRow);
+			Arrays.fill(row, 0L);
+			++count;
+		}
+
+		if(count == 0) throw new IllegalArgumentException("Lattice is empty.");
+		if(words.length != count * wordsPerRow) words = Arrays.copyOf(words, count * wordsPerRow);
+		return new BitLattice(count, source.getCols(), words);
+	}
+
+	private boolean isJson()
+	{
+		String format = options.containsKey("format") ? options.get("format") : "csv";
+		switch(format)
+		{
+			case "csv":
+				return false;
+			case "json":
+				return true;
+			default:
+				throw new IllegalArgumentException("Unknown format " + format);
+		}
+	}
+
+	/**
+	 * Write the report to the output file or the standard output.
+	 * @param report fields of the report.
+	 * @param rows rows of CSV table, which are prefixed by fields of the report, or null for one row.
+	 */
+	private void write(Map<String, Object> report, List<Map<String, Object>> rows) throws IOException
+	{
+		write(report, rows, options.get("output"));
+	}
+
+	/**
+	 * @param output destination file or null for the standard output.
+	 */
+	private void write(Map<String, Object> report, List<Map<String, Object>> rows, String output) throws IOException
+	{
+		boolean isJson = isJson();
+		PrintWriter out = new PrintWriter(new BufferedWriter((output == null) ?
+				new OutputStreamWriter(System.out, StandardCharsets.UTF_8) :
+				new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)));
+
+		if(isJson)
+		{
+			StringBuilder sb = new StringBuilder();
+			appendJson(sb, report);
+			out.println(sb);
+		}
+		else
+		{
+			if(rows == null) rows = Collections.singletonList(Collections.<String, Object>emptyMap());
+
+			List<String> header = new ArrayList<>(report.keySet());
+			header.addAll(rows.get(0).keySet());
+			out.println(joinCsv(header));
+			for(Map<String, Object> row : rows)
+			{
+				List<Object> values = new ArrayList<>(report.values());
+				values.addAll(row.values());
+				out.println(joinCsv(values));
+			}
+		}
+
+		// The standard output is kept open for the caller
+		if(output == null) out.flush(); else out.close();
+		if(out.checkError()) throw new IOException("Result can't be written.");
+	}
+
+	private static String joinCsv(List<?> values)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(Object value : values)
+		{
+			if(sb.length() > 0) sb.append(',');
+			String text = String.valueOf(value);
+			if(text.indexOf(',') >= 0 || text.indexOf('"') >= 0)
+			{
+				sb.append('"').append(text.replace("\"", "\"\"")).append('"');
+			}
+			else
+			{
+				sb.append(text);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendJson(StringBuilder sb, Object value)
+	{
+		if(value instanceof Map)
+		{
+			sb.append('{');
+			boolean isFirst = true;
+			for(Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+			{
+				if(!isFirst) sb.append(',');
+				isFirst = false;
+				appendJson(sb, entry.getKey().toString());
+				sb.append(':');
+				appendJson(sb, entry.getValue());
+			}
+			sb.append('}');
+		}
+		else if(value instanceof List)
+		{
+			sb.append('[');
+			boolean isFirst = true;
+			for(Object element : (List<?>)value)
+			{
+				if(!isFirst) sb.append(',');
+				isFirst = false;
+				appendJson(sb, element);
+			}
+			sb.append(']');
+		}
+		else if(value instanceof Double && (((Double)value).isNaN() || ((Double)value).isInfinite()))
+		{
+			sb.append("null");
+		}
+		else if(value instanceof Number || value instanceof Boolean)
+		{
+			sb.append(value);
+		}
+		else
+		{
+			sb.append('"');
+			String text = String.valueOf(value);
+			for(int i = 0 ; i < text.length() ; i++)
+			{
+				char c = text.charAt(i);
+				if(c == '"' || c == '\\') sb.append('\\').append(c);
+				else if(c < ' ') sb.append(String.format("\\u%04x", (int)c));
+				else sb.append(c);
+			}
+			sb.append('"');
+		}
+	}
+
+	private int getInt(String name, Integer defaultValue)
+	{
+		String value = options.get(name);
+		if(value == null)
+		{
+			if(defaultValue == null) throw new IllegalArgumentException("Option --" + name + " is required.");
+			return defaultValue;
+		}
+		return Integer.parseInt(value);
+	}
+
+	private long getLong(String name)
+	{
+		return Long.parseLong(options.get(name));
+	}
+
+	private double getDouble(String name, Double defaultValue)
+	{
+		String value = options.get(name);
+		if(value == null)
+		{
+			if(defaultValue == null) throw new IllegalArgumentException("Option --" + name + " is required.");
+			return defaultValue;
+		}
+		return Double.parseDouble(value);
+	}
+
+	private RandomSource.Kind getGenerator()
+	{
+		try
+		{
+			return RandomSource.Kind.valueOf(options.get("generator").toUpperCase(Locale.ROOT));
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Unknown generator " + options.get("generator"));
+		}
+	}
+
+	private Stencil getStencil()
+	{
+		if(!options.containsKey("stencil")) return Stencil.NEAREST;
+		try
+		{
+			return Stencil.valueOf(options.get("stencil").toUpperCase(Locale.ROOT));
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Unknown stencil " + options.get("stencil"));
+		}
+	}
+
+	private ExperimentOnPercolation.Engine getEngine()
+	{
+		try
+		{
+			return ExperimentOnPercolation.Engine.valueOf(options.get("engine").toUpperCase(Locale.ROOT));
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Unknown engine " + options.get("engine"));
+		}
+	}
+}
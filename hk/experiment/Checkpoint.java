@@ -0,0 +1,129 @@
+package hk.experiment;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * File with snapshots of the experiment state. Snapshots are written by the background thread
+ * to the temporary file, which replaces the checkpoint by atomic rename,
+ * so the checkpoint is always complete and the caller doesn't wait for the disk.
+ */
+class Checkpoint
+{
+	private final File file;
+	private final long interval;
+	private final ExecutorService writer;
+	private long lastWrite;
+	private volatile IOException error = null;
+
+	/**
+	 * @param file checkpoint file.
+	 * @param interval minimal time between writes in milliseconds.
+	 */
+	Checkpoint(File file, long interval)
+	{
+		this.file = file;
+		this.interval = interval;
+		this.lastWrite = System.currentTimeMillis();
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "Checkpoint writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Read the last snapshot.
+	 * @param file checkpoint file.
+	 * @return Snapshot or null, if there is no checkpoint.
+	 * @throws IOException if the file can't be read.
+	 */
+	static byte[] read(File file) throws IOException
+	{
+		if(!file.exists()) return null;
+		return Files.readAllBytes(file.toPath());
+	}
+
+	/**
+	 * The snapshot is made only when it's due, so states between writes aren't serialized.
+	 * @return Whether the interval has passed since the last write.
+	 */
+	boolean isDue()
+	{
+		return System.currentTimeMillis() - lastWrite >= interval;
+	}
+
+	/**
+	 * Write the snapshot in background.
+	 * @param snapshot state of the experiment, it isn't changed after the call.
+	 */
+	void offer(byte[] snapshot)
+	{
+		lastWrite = System.currentTimeMillis();
+		submit(snapshot);
+	}
+
+	/**
+	 * Wait for all writes.
+	 * @throws IOException if any snapshot can't be written.
+	 */
+	void close() throws IOException
+	{
+		writer.shutdown();
+		try
+		{
+			while(!writer.awaitTermination(1, TimeUnit.SECONDS));
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if(error != null) throw error;
+	}
+
+	private void submit(final byte[] snapshot)
+	{
+		writer.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					write(snapshot);
+				}
+				catch(IOException e)
+				{
+					error = e;
+				}
+			}
+		});
+	}
+
+	private void write(byte[] snapshot) throws IOException
+	{
+		File temporary = new File(file.getPath() + ".tmp");
+		try(FileOutputStream out = new FileOutputStream(temporary))
+		{
+			out.write(snapshot);
+			// Data is on the disk before it replaces the checkpoint
+			out.getFD().sync();
+		}
+
+		try
+		{
+			Files.move(temporary.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package hk.experiment;
+
+import hk.ClusterStatistics;
+
+import java.io.*;
+
+/**
+ * Cluster statistics of samples averaged for each chance of the sweep:
+ * count of clusters, the largest cluster, the mean cluster size and the histogram n(s)
+ * with logarithmic bins of {@link ClusterStatistics}.
+ * Sums of s and s^2 over non-spanning clusters of all samples give the mean cluster size of the ensemble.
+ */
+public class ClusterProfile
+{
+	private final double minChance, step;
+	private final int points;
+	private final long[] samples;
+	private final double[] clusterCounts, largestSizes, meanClusterSizes;
+	private final long[] finiteSites;
+	private final double[] finiteSquares;
+	private final long[][] sizeBins;
+
+	/**
+	 * @param minChance,step chance of the first point and distance between points.
+	 * @param points count of chances.
+	 */
+	public ClusterProfile(double minChance, double step, int points)
+	{
+		if(points < 0 || step <= 0.0) throw new IllegalArgumentException();
+
+		this.minChance = minChance;
+		this.step = step;
+		this.points = points;
+		samples = new long[points];
+		clusterCounts = new double[points];
+		largestSizes = new double[points];
+		meanClusterSizes = new double[points];
+		finiteSites = new long[points];
+		finiteSquares = new double[points];
+		sizeBins = new long[points][ClusterStatistics.SIZE_BINS];
+	}
+
+	/**
+	 * Put cluster statistics of one lattice.
+	 * @param point number of the chance.
+	 * @param statistics statistics of clusters of the lattice.
+	 */
+	public void put(int point, ClusterStatistics statistics)
+	{
+		++samples[point];
+		clusterCounts[point] += statistics.getCount();
+		largestSizes[point] += statistics.getLargest();
+		meanClusterSizes[point] += statistics.getMeanClusterSize();
+		finiteSites[point] += statistics.getFiniteSites();
+		finiteSquares[point] += statistics.getSecondMoment();
+		final long[] bins = sizeBins[point];
+		for(int b = 0 ; b < bins.length ; b++)
+		{
+			bins[b] += statistics.getCountOfSizeBin(b);
+		}
+	}
+
+	/**
+	 * Add samples of other profile with the same chances to this one.
+	 * @param other merged profile.
+	 */
+	public void merge(ClusterProfile other)
+	{
+		if(other.points != points) throw new IllegalArgumentException();
+
+		for(int i = 0 ; i < points ; i++)
+		{
+			samples[i] += other.samples[i];
+			clusterCounts[i] += other.clusterCounts[i];
+			largestSizes[i] += other.largestSizes[i];
+			meanClusterSizes[i] += other.meanClusterSizes[i];
+			finiteSites[i] += other.finiteSites[i];
+			finiteSquares[i] += other.finiteSquares[i];
+			for(int b = 0 ; b < ClusterStatistics.SIZE_BINS ; b++)
+			{
+				sizeBins[i][b] += other.sizeBins[i][b];
+			}
+		}
+	}
+
+	/**
+	 * Write accumulated values.
+	 * @param out destination.
+	 * @throws IOException if the output fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(points);
+		for(int i = 0 ; i < points ; i++)
+		{
+			out.writeLong(samples[i]);
+			out.writeDouble(clusterCounts[i]);
+			out.writeDouble(largestSizes[i]);
+			out.writeDouble(meanClusterSizes[i]);
+			out.writeLong(finiteSites[i]);
+			out.writeDouble(finiteSquares[i]);
+			for(long count : sizeBins[i]) out.writeLong(count);
+		}
+	}
+
+	/**
+	 * Replace accumulated values by ones written by {@link #writeTo}.
+	 * @param in source of the profile with the same chances.
+	 * @throws IOException if the input fails.
+	 */
+	public void readFrom(DataInput in) throws IOException
+	{
+		if(in.readInt() != points) throw new IllegalArgumentException("Chances of profiles differ.");
+		for(int i = 0 ; i < points ; i++)
+		{
+			samples[i] = in.readLong();
+			clusterCounts[i] = in.readDouble();
+			largestSizes[i] = in.readDouble();
+			meanClusterSizes[i] = in.readDouble();
+			finiteSites[i] = in.readLong();
+			finiteSquares[i] = in.readDouble();
+			for(int b = 0 ; b < ClusterStatistics.SIZE_BINS ; b++)
+			{
+				sizeBins[i][b] = in.readLong();
+			}
+		}
+	}
+
+	public int getPoints(){
+		return points;
+	}
+
+	public double getChance(int point){
+		return minChance + point * step;
+	}
+
+	public long getCount(int point){
+		return samples[point];
+	}
+
+	public double getAverageClusterCount(int point){
+		return average(clusterCounts, point);
+	}
+
+	public double getAverageLargest(int point){
+		return average(largestSizes, point);
+	}
+
+	/**
+	 * @param point number of the chance.
+	 * @return Mean cluster size averaged over samples, spanning clusters are excluded.
+	 */
+	public double getAverageMeanClusterSize(int point){
+		return average(meanClusterSizes, point);
+	}
+
+	/**
+	 * @param point number of the chance.
+	 * @return Sum of s^2 over sum of s for non-spanning clusters of all samples.
+	 */
+	public double getMeanClusterSize(int point){
+		return (finiteSites[point] == 0) ? 0.0 : finiteSquares[point] / finiteSites[point];
+	}
+
+	/**
+	 * @param point number of the chance.
+	 * @param bin number of the logarithmic bin.
+	 * @return Count of clusters with sizes from 2^bin to 2^(bin + 1) - 1 per sample.
+	 */
+	public double getAverageCountOfSizeBin(int point, int bin){
+		return (samples[point] == 0) ? 0.0 : (double)sizeBins[point][bin] / samples[point];
+	}
+
+	/**
+	 * @param point number of the chance.
+	 * @return Count of bins up to the last non-empty one.
+	 */
+	public int getSizeBins(int point){
+		int bins = ClusterStatistics.SIZE_BINS;
+		while(bins > 0 && sizeBins[point][bins - 1] == 0) --bins;
+		return bins;
+	}
+
+	private double average(double[] sums, int point)
+	{
+		return (samples[point] == 0) ? 0.0 : sums[point] / samples[point];
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		String nl = System.lineSeparator();
+		sb.append("Chance\tClusters\tLargest\tMean cluster size\tEnsemble mean cluster size\tn(s) by bins of 2^b")
+				.append(nl);
+		for(int i = 0 ; i < points ; i++)
+		{
+			if(samples[i] == 0) continue;
+			sb.append(getChance(i)).append('\t')
+					.append(getAverageClusterCount(i)).append('\t')
+					.append(getAverageLargest(i)).append('\t')
+					.append(getAverageMeanClusterSize(i)).append('\t')
+					.append(getMeanClusterSize(i));
+			for(int b = 0, bins = getSizeBins(i) ; b < bins ; b++)
+			{
+				sb.append(b == 0 ? '\t' : ' ').append(getAverageCountOfSizeBin(i, b));
+			}
+			sb.append(nl);
+		}
+		return sb.toString();
+	}
+}
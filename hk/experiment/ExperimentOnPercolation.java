@@ -1,17 +1,132 @@
 package hk.experiment;
 
 import hk.Lattice;
+import hk.cell.HashedField;
+import hk.cell.RandomField;
+import hk.cell.ThresholdField;
 import hk.util.Pair;
+import hk.util.RandomSource;
 
-import java.util.Random;
+import static hk.experiment.TwoDimensionalPercolation.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ExperimentOnPercolation implements Runnable
 {
+	/**
+	 * Way of running a sample.
+	 */
+	public enum Engine
+	{
+		/**
+		 * Clusterize the lattice for each chance from the range.
+		 * The statistic gets the kind of percolation for each chance.
+		 */
+		SWEEP,
+		/**
+		 * Occupy sites one by one by Newman-Ziff algorithm.
+		 * The statistic gets exact thresholds of the sample, the chance range isn't used.
+		 */
+		NEWMAN_ZIFF,
+		/**
+		 * Bracket thresholds of the sample by the chance range with the step,
+		 * then bisect brackets down to the precision.
+		 * The statistic gets thresholds of the sample.
+		 */
+		REFINEMENT
+	}
+
+	/**
+	 * Samples are grouped into blocks of this size. Blocks are merged in order,
+	 * so the statistic doesn't depend on the count of threads.
+	 */
+	private static final int SAMPLES_PER_BLOCK = 16;
+
+	/**
+	 * Adaptive stop needs at least this count of samples, so the variance estimate is reliable.
+	 */
+	private static final int MIN_ADAPTIVE_SAMPLES = 2 * SAMPLES_PER_BLOCK;
+
+	private static final int CHECKPOINT_MAGIC = 0x484B4350, CHECKPOINT_VERSION = 7;
+
 	private int rows, cols;
 	private double minChance, maxChance;
 	private double step;
 	private int countOfExperiments = 1;
+	private int threads = 1;
+	private long seed = new Random().nextLong();
+	private boolean isSeedSet = false;
+	private Engine engine = Engine.SWEEP;
+	private double precision = 1e-4;
+	private RandomSource.Kind generator = RandomSource.Kind.SPLITMIX64;
+	private int thresholdBits = 32;
+	private boolean isHashedField = false;
 	private final Statistic statistic = new Statistic();
+	private ClusterProfile profile;
+	private volatile boolean isCancelled = false;
+	private final AtomicInteger completedSamples = new AtomicInteger();
+	private final AtomicLong completedLattices = new AtomicLong();
+	private File checkpointFile = null;
+	private long checkpointInterval = 10000;
+	private int resumedSamples = 0;
+	private double targetHalfWidth = 0.0;
+	private double confidence = 0.95;
+	private long timeBudget = 0;
+	private volatile boolean isTargetReached = false;
+	private volatile long deadline = Long.MAX_VALUE;
+	private int mergedSamples = 0;
+	/**
+	 * Count of merged samples of each block. Samples of the block are run from its start,
+	 * so the stopped run merges a part of the block and the next run continues it.
+	 */
+	private int[] blockSamples;
+	/**
+	 * Blocks before the first one are complete, there are no merged samples from the last one.
+	 */
+	private int firstIncompleteBlock, lastMergedBlock;
+	/**
+	 * Whether samples are merged after the last snapshot.
+	 */
+	private boolean isCheckpointBehind;
+
+	/**
+	 * Lattice and random field of the worker thread.
+	 */
+	private ThreadLocal<Workspace> workspaces;
+
+	private class Workspace
+	{
+		final RandomSource gen = generator.create(0L);
+		Lattice lattice;
+		RandomField field;
+		ThresholdField storedField;
+		HashedField hashedField;
+		NewmanZiff newmanZiff;
+
+		Workspace()
+		{
+			if(engine == Engine.NEWMAN_ZIFF)
+			{
+				newmanZiff = new NewmanZiff(rows, cols);
+			}
+			else
+			{
+				lattice = new Lattice();
+				if(isHashedField)
+				{
+					field = hashedField = new HashedField(rows, cols, 0L);
+				}
+				else
+				{
+					field = storedField = new ThresholdField(rows, cols, thresholdBits);
+				}
+			}
+		}
+	}
 
 	public ExperimentOnPercolation(Pair<Integer, Integer> size, Pair<Double, Double> chanceRange, double step)
 	{
@@ -63,36 +178,716 @@ public class ExperimentOnPercolation implements Runnable
 		this.countOfExperiments = countOfExperiments;
 	}
 
+	public int getThreads(){
+		return threads;
+	}
+
+	/**
+	 * @param threads count of worker threads, which run samples.
+	 */
+	public void setThreads(int threads){
+		if(threads < 1) throw new IllegalArgumentException();
+		this.threads = threads;
+	}
+
+	public long getSeed(){
+		return seed;
+	}
+
+	/**
+	 * @param seed seed, from which random fields of all samples are derived.
+	 */
+	public void setSeed(long seed){
+		this.seed = seed;
+		isSeedSet = true;
+	}
+
+	public File getCheckpoint(){
+		return checkpointFile;
+	}
+
+	/**
+	 * The state of the experiment is saved to the file periodically.
+	 * If the file exists, the experiment with the same parameters is resumed from it.
+	 * Periodic snapshots keep blocks merged in order, so the resumed run is the same as the uninterrupted one.
+	 * The cancelled or timed out run also saves samples of partially run blocks; they aren't run again,
+	 * but the statistic of the resumed run may differ from the uninterrupted one in rounding.
+	 * @param file checkpoint file or null to run without checkpoints.
+	 */
+	public void setCheckpoint(File file){
+		this.checkpointFile = file;
+	}
+
+	public long getCheckpointInterval(){
+		return checkpointInterval;
+	}
+
+	/**
+	 * @param interval minimal time between checkpoint writes in milliseconds.
+	 */
+	public void setCheckpointInterval(long interval){
+		if(interval < 0) throw new IllegalArgumentException();
+		this.checkpointInterval = interval;
+	}
+
+	/**
+	 * @return Count of samples, which are restored from the checkpoint by the last run.
+	 */
+	public int getResumedSamples(){
+		return resumedSamples;
+	}
+
+	public double getTargetHalfWidth(){
+		return targetHalfWidth;
+	}
+
+	/**
+	 * Run samples until half-widths of confidence intervals of thresholds by X and by Y
+	 * are not greater than the target. The count of experiments is the upper limit of samples.
+	 * The stop is checked after blocks are merged in order, so the result doesn't depend on threads.
+	 * Only Newman-Ziff and refinement engines give thresholds of samples, the sweep engine can't stop by the target.
+	 * @param targetHalfWidth target half-width or 0 to run all samples.
+	 */
+	public void setTargetHalfWidth(double targetHalfWidth){
+		if(targetHalfWidth < 0.0) throw new IllegalArgumentException();
+		this.targetHalfWidth = targetHalfWidth;
+	}
+
+	public double getConfidence(){
+		return confidence;
+	}
+
+	/**
+	 * @param confidence confidence level of intervals for the adaptive stop, for example 0.95.
+	 */
+	public void setConfidence(double confidence){
+		if(confidence <= 0.0 || confidence >= 1.0) throw new IllegalArgumentException();
+		this.confidence = confidence;
+	}
+
+	public long getTimeBudget(){
+		return timeBudget;
+	}
+
+	/**
+	 * The run stops like cancelled one, when the time is over. Finished samples are kept.
+	 * @param timeBudget wall-clock time of the run in milliseconds or 0 without limit.
+	 */
+	public void setTimeBudget(long timeBudget){
+		if(timeBudget < 0) throw new IllegalArgumentException();
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * @return Whether the last run has reached the target half-width.
+	 */
+	public boolean isTargetReached(){
+		return isTargetReached;
+	}
+
+	/**
+	 * @return Count of samples in the statistic after the last run, resumed ones are included.
+	 */
+	public int getMergedSamples(){
+		return mergedSamples;
+	}
+
+	public RandomSource.Kind getGenerator(){
+		return generator;
+	}
+
+	/**
+	 * @param generator kind of random generators of samples.
+	 */
+	public void setGenerator(RandomSource.Kind generator){
+		if(generator == null) throw new IllegalArgumentException();
+		this.generator = generator;
+	}
+
+	public int getThresholdBits(){
+		return thresholdBits;
+	}
+
+	/**
+	 * Thresholds of 16 bits take 4 times less memory than doubles, but chances and the precision
+	 * are resolved only up to 2^-16. Thresholds of 32 bits take 2 times less memory.
+	 * @param thresholdBits bits per site of the random field, 16 or 32.
+	 */
+	public void setThresholdBits(int thresholdBits){
+		if(thresholdBits != 16 && thresholdBits != 32) throw new IllegalArgumentException();
+		this.thresholdBits = thresholdBits;
+	}
+
+	public boolean isHashedField(){
+		return isHashedField;
+	}
+
+	/**
+	 * The hashed field isn't stored, thresholds are computed from the seed of the sample and coordinates
+	 * for each chance. It saves 4 bytes per site and costs a hash per site and chance.
+	 * Results are the same as ones of the stored field, so it needs SplitMix64 generator and 32-bit thresholds.
+	 * It isn't used by Newman-Ziff engine.
+	 * @param isHashedField true for the hashed field, false for the stored one.
+	 */
+	public void setHashedField(boolean isHashedField){
+		this.isHashedField = isHashedField;
+	}
+
+	public Engine getEngine(){
+		return engine;
+	}
+
+	public void setEngine(Engine engine){
+		if(engine == null) throw new IllegalArgumentException();
+		this.engine = engine;
+	}
+
+	public double getPrecision(){
+		return precision;
+	}
+
+	/**
+	 * @param precision width of threshold brackets for refinement engine.
+	 * Brackets aren't narrowed below the quantum of thresholds 2^-thresholdBits.
+	 */
+	public void setPrecision(double precision){
+		if(precision <= 0.0 || precision > 1.0) throw new IllegalArgumentException();
+		this.precision = precision;
+	}
+
+	/**
+	 * Result of the block of samples.
+	 */
+	private static class Block
+	{
+		final Statistic statistic = new Statistic();
+		ClusterProfile profile;
+		int samples;
+	}
+
+	/**
+	 * @return Count of chances, which are passed by the sweep.
+	 */
+	private int getSweepPoints()
+	{
+		int points = 0;
+		for(double current = minChance ; current < maxChance ; current += step) points++;
+		return points;
+	}
+
+	/**
+	 * @return Count of samples in the block.
+	 */
+	private int getBlockSize(int block)
+	{
+		return Math.min(countOfExperiments - block * SAMPLES_PER_BLOCK, SAMPLES_PER_BLOCK);
+	}
+
+	private void merge(Block block, int index, Checkpoint checkpoint)
+	{
+		if(block.samples == 0) return;
+
+		statistic.merge(block.statistic);
+		if(block.profile != null) profile.merge(block.profile);
+		mergedSamples += block.samples;
+
+		blockSamples[index] += block.samples;
+		lastMergedBlock = Math.max(lastMergedBlock, index + 1);
+		while(firstIncompleteBlock < blockSamples.length &&
+			blockSamples[firstIncompleteBlock] == getBlockSize(firstIncompleteBlock))
+		{
+			++firstIncompleteBlock;
+		}
+
+		// Each merged sample is saved, also ones of blocks after a partially run block.
+		// The state is serialized only for the write, the last one is written at the end of the run.
+		if(checkpoint != null)
+		{
+			isCheckpointBehind = !checkpoint.isDue();
+			if(!isCheckpointBehind) checkpoint.offer(saveState());
+		}
+
+		if(!isTargetReached && checkTarget()) isTargetReached = true;
+	}
+
+	/**
+	 * @return Whether confidence intervals of thresholds by X and by Y are narrow enough.
+	 */
+	private boolean checkTarget()
+	{
+		if(targetHalfWidth <= 0.0 || mergedSamples < MIN_ADAPTIVE_SAMPLES) return false;
+		return statistic.getConfidenceHalfWidth(BY_X, confidence) <= targetHalfWidth &&
+				statistic.getConfidenceHalfWidth(BY_Y, confidence) <= targetHalfWidth;
+	}
+
+	/**
+	 * @return Whether workers shouldn't start new samples.
+	 */
+	private boolean isStopping()
+	{
+		return isCancelled || isTargetReached || System.currentTimeMillis() >= deadline;
+	}
+
 	@Override
 	public void run()
 	{
-		Random gen = new Random();
-		Lattice lattice = new Lattice();
-		int i, j, k;
+		final int blocks = (countOfExperiments + SAMPLES_PER_BLOCK - 1) / SAMPLES_PER_BLOCK;
+
+		if(isHashedField && (generator != RandomSource.Kind.SPLITMIX64 || thresholdBits != 32))
+		{
+			throw new IllegalStateException("Hashed field needs SplitMix64 generator and 32-bit thresholds.");
+		}
+		if(targetHalfWidth > 0.0 && engine == Engine.SWEEP)
+		{
+			throw new IllegalStateException("Sweep engine doesn't give thresholds of samples for the target.");
+		}
+
+		completedLattices.set(0L);
+		isTargetReached = false;
+		deadline = (timeBudget > 0) ? System.currentTimeMillis() + timeBudget : Long.MAX_VALUE;
+
+		if(engine == Engine.SWEEP && profile == null)
+		{
+			profile = new ClusterProfile(minChance, step, getSweepPoints());
+		}
+
+		// Resume from the checkpoint
+		blockSamples = new int[blocks];
+		firstIncompleteBlock = lastMergedBlock = 0;
+		isCheckpointBehind = false;
+		resumedSamples = 0;
+		Checkpoint checkpoint = null;
+		if(checkpointFile != null)
+		{
+			try
+			{
+				byte[] snapshot = Checkpoint.read(checkpointFile);
+				if(snapshot != null) resumedSamples = restoreState(snapshot);
+			}
+			catch(IOException e)
+			{
+				throw new IllegalStateException("Checkpoint can't be read.", e);
+			}
+			checkpoint = new Checkpoint(checkpointFile, checkpointInterval);
+		}
+		completedSamples.set(resumedSamples);
+		mergedSamples = resumedSamples;
+
+		Throwable failure = null;
+		try
+		{
+			runBlocks(checkpoint);
+		}
+		catch(RuntimeException | Error e)
+		{
+			failure = e;
+			throw e;
+		}
+		finally
+		{
+			if(checkpoint != null) closeCheckpoint(checkpoint, failure);
+		}
+	}
+
+	/**
+	 * Write the last snapshot. The failure of the checkpoint doesn't replace the failure of the run.
+	 * @param failure exception thrown by the run or null.
+	 */
+	private void closeCheckpoint(Checkpoint checkpoint, Throwable failure)
+	{
+		try
+		{
+			if(isCheckpointBehind) checkpoint.offer(saveState());
+			checkpoint.close();
+		}
+		catch(IOException e)
+		{
+			IllegalStateException error = new IllegalStateException("Checkpoint can't be written.", e);
+			if(failure == null) throw error;
+			failure.addSuppressed(error);
+		}
+	}
+
+	/**
+	 * Run the rest of incomplete blocks and merge their results in order.
+	 * @param checkpoint checkpoint for states after merged blocks or null.
+	 */
+	private void runBlocks(Checkpoint checkpoint)
+	{
+		final int blocks = blockSamples.length;
+
+		workspaces = new ThreadLocal<Workspace>()
+		{
+			@Override
+			protected Workspace initialValue(){
+				return new Workspace();
+			}
+		};
+
+		if(threads == 1)
+		{
+			// The caller's thread may be pooled, so it doesn't keep the workspace after the run
+			try
+			{
+				for(int b = firstIncompleteBlock ; b < blocks && !isTargetReached ; b++)
+				{
+					if(blockSamples[b] < getBlockSize(b)) merge(runBlock(b, blockSamples[b]), b, checkpoint);
+				}
+			}
+			finally
+			{
+				workspaces.remove();
+			}
+			return;
+		}
+
+		// Workspaces of worker threads are dropped with threads
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<Block>> results = new ArrayList<>(blocks - firstIncompleteBlock);
+			List<Integer> indices = new ArrayList<>(blocks - firstIncompleteBlock);
+			for(int b = firstIncompleteBlock ; b < blocks ; b++)
+			{
+				if(blockSamples[b] == getBlockSize(b)) continue;
+				final int block = b, first = blockSamples[b];
+				results.add(executor.submit(new Callable<Block>()
+				{
+					@Override
+					public Block call(){
+						return runBlock(block, first);
+					}
+				}));
+				indices.add(b);
+			}
+
+			// Merge in order of blocks, blocks after the reached target are dropped
+			for(int i = 0 ; i < results.size() && !isTargetReached ; i++)
+			{
+				merge(results.get(i).get(), indices.get(i), checkpoint);
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run samples of the block.
+	 * @param block number of the block.
+	 * @param first count of samples of the block, which are merged before.
+	 * @return Statistic and cluster profile of the run samples.
+	 */
+	private Block runBlock(int block, int first)
+	{
+		Workspace workspace = workspaces.get();
+		Block result = new Block();
+		if(profile != null)
+		{
+			result.profile = new ClusterProfile(minChance, step, profile.getPoints());
+		}
+		int end = Math.min(countOfExperiments, (block + 1) * SAMPLES_PER_BLOCK);
+
+		// Samples are run entirely, so the result of the cancelled block is consistent
+		for(int k = block * SAMPLES_PER_BLOCK + first ; k < end && !isStopping() ; k++)
+		{
+			runSample(workspace, getSampleSeed(k), result);
+			completedSamples.incrementAndGet();
+			++result.samples;
+		}
+
+		return result;
+	}
+
+	private void runSample(Workspace workspace, long sampleSeed, Block result)
+	{
+		workspace.gen.setSeed(sampleSeed);
+		if(engine == Engine.NEWMAN_ZIFF)
+		{
+			workspace.newmanZiff.sample(workspace.gen);
+			result.statistic.putThresholds(workspace.newmanZiff.getThresholdByX(),
+					workspace.newmanZiff.getThresholdByY());
+			completedLattices.incrementAndGet();
+			return;
+		}
+
+		final RandomField field = workspace.field;
+		final Lattice lattice = workspace.lattice;
+		int point;
 		double current;
 
-		// Generate random array
-		double[][] cells = new double[rows][cols];
+		// The hashed field with the seed as the key is the same as the stored field filled by the generator
+		if(workspace.hashedField != null)
+		{
+			workspace.hashedField.setKey(sampleSeed);
+		}
+		else
+		{
+			workspace.storedField.fill(workspace.gen);
+		}
 
-		// Run experiments
-		for(k = 0 ; k < countOfExperiments ; ++k){
-			// Fill array
-			for(i = 0 ; i < rows ; i++){
-				for(j = 0 ; j < cols ; j++){
-					cells[i][j] = gen.nextDouble();
+		if(engine == Engine.REFINEMENT)
+		{
+			refineThresholds(lattice, field, result.statistic);
+			return;
+		}
+
+		// Calculate threshold, cluster statistics are taken from the label table
+		for(current = minChance, point = 0 ; current < maxChance ; current += step, point++){
+			result.statistic.put(classify(lattice, field, current), current);
+			result.profile.put(point, lattice.getClusterStatistics());
+		}
+	}
+
+	/**
+	 * Find thresholds of the random field by coarse pass and bisection.
+	 * Percolation is monotone in chance for the fixed field,
+	 * so each threshold lies between the last chance without percolation
+	 * and the first chance with it.
+	 */
+	private void refineThresholds(Lattice lattice, RandomField field, Statistic result)
+	{
+		// Chance 1 occupies all sites, so the lattice percolates in both directions
+		double lowX = 0.0, highX = 1.0, lowY = 0.0, highY = 1.0;
+		boolean foundX = false, foundY = false;
+		TwoDimensionalPercolation percolation;
+		double current;
+
+		// Coarse pass
+		for(current = minChance ; current < maxChance && current < 1.0 ; current += step){
+			percolation = classify(lattice, field, current);
+			if(!foundX)
+			{
+				if(percolation.isByX())
+				{
+					highX = current;
+					foundX = true;
 				}
+				else
+				{
+					lowX = current;
+				}
+			}
+			if(!foundY)
+			{
+				if(percolation.isByY())
+				{
+					highY = current;
+					foundY = true;
+				}
+				else
+				{
+					lowY = current;
+				}
+			}
+			if(foundX && foundY) break;
+		}
+
+		// Bisect the wider bracket, each lattice narrows both brackets.
+		// Brackets narrower than the quantum of thresholds don't change the lattice,
+		// and the midpoint of the bracket of one ulp is its end, so bisection stops there.
+		final double minWidth = Math.max(precision, 1.0 / (1L << thresholdBits));
+		while(highX - lowX > minWidth || highY - lowY > minWidth)
+		{
+			current = (highX - lowX >= highY - lowY) ?
+					0.5 * (lowX + highX) : 0.5 * (lowY + highY);
+			if(!(current > lowX && current < highX) && !(current > lowY && current < highY)) break;
+
+			percolation = classify(lattice, field, current);
+			if(current > lowX && current < highX)
+			{
+				if(percolation.isByX()) highX = current; else lowX = current;
+			}
+			if(current > lowY && current < highY)
+			{
+				if(percolation.isByY()) highY = current; else lowY = current;
+			}
+		}
+
+		result.putThresholds(0.5 * (lowX + highX), 0.5 * (lowY + highY));
+	}
+
+	/**
+	 * Occupy sites of the random field and find the kind of percolation.
+	 * Labels aren't relabeled, until the result lattice is observed.
+	 * @param chance sites with less values are occupied.
+	 */
+	private TwoDimensionalPercolation classify(Lattice lattice, RandomField field, double chance)
+	{
+		lattice.generateNewLattice(field, chance);
+		lattice.clusterize();
+		completedLattices.incrementAndGet();
+		return lattice.checkEdges();
+	}
+
+	/**
+	 * Write parameters of the experiment and accumulated results.
+	 * Random streams of samples are derived from the seed, so it's the whole state of generators.
+	 * Merged samples are the count of complete blocks and counts of samples of blocks after them.
+	 * @return Snapshot of the state.
+	 */
+	private byte[] saveState()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(rows);
+			out.writeInt(cols);
+			out.writeDouble(minChance);
+			out.writeDouble(maxChance);
+			out.writeDouble(step);
+			out.writeInt(countOfExperiments);
+			out.writeUTF(engine.name());
+			out.writeDouble(precision);
+			out.writeUTF(generator.name());
+			out.writeInt(thresholdBits);
+			out.writeLong(seed);
+			out.writeInt(firstIncompleteBlock);
+			int partialBlocks = 0;
+			for(int b = firstIncompleteBlock ; b < lastMergedBlock ; b++)
+			{
+				if(blockSamples[b] > 0) partialBlocks++;
+			}
+			out.writeInt(partialBlocks);
+			for(int b = firstIncompleteBlock ; b < lastMergedBlock ; b++)
+			{
+				if(blockSamples[b] == 0) continue;
+				out.writeInt(b);
+				out.writeInt(blockSamples[b]);
 			}
+			statistic.writeTo(out);
+			out.writeBoolean(profile != null);
+			if(profile != null) profile.writeTo(out);
+		}
+		catch(IOException e)
+		{
+			// Byte array doesn't fail
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Restore accumulated results from the snapshot of the same experiment.
+	 * The seed is taken from the snapshot, if it isn't set explicitly.
+	 * @param snapshot state written by {@link #saveState}.
+	 * @return Count of merged samples.
+	 */
+	private int restoreState(byte[] snapshot) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot)))
+		{
+			if(in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION)
+			{
+				throw new IllegalArgumentException("It isn't a checkpoint of the experiment.");
+			}
+			if(in.readInt() != rows || in.readInt() != cols ||
+				in.readDouble() != minChance || in.readDouble() != maxChance || in.readDouble() != step ||
+				in.readInt() != countOfExperiments || !in.readUTF().equals(engine.name()) ||
+				in.readDouble() != precision || !in.readUTF().equals(generator.name()) ||
+				in.readInt() != thresholdBits)
+			{
+				throw new IllegalArgumentException("Checkpoint doesn't match parameters of the experiment.");
+			}
+
+			long savedSeed = in.readLong();
+			if(isSeedSet && savedSeed != seed)
+			{
+				throw new IllegalArgumentException("Checkpoint doesn't match the seed of the experiment.");
+			}
+			seed = savedSeed;
 
-			// Calculate threshold
-			for(current = minChance ; current < maxChance ; current += step){
-				lattice.generateNewLattice(cells, current);
-				lattice.clusterize();
-				statistic.put(lattice.checkEdges(), current);
+			// Complete blocks and partially run ones
+			int completeBlocks = in.readInt(), samples = 0;
+			if(completeBlocks < 0 || completeBlocks > blockSamples.length)
+			{
+				throw new IllegalArgumentException("It isn't a checkpoint of the experiment.");
+			}
+			for(int b = 0 ; b < completeBlocks ; b++)
+			{
+				blockSamples[b] = getBlockSize(b);
+				samples += blockSamples[b];
+			}
+			int block;
+			for(int i = in.readInt() ; i > 0 ; i--)
+			{
+				block = in.readInt();
+				if(block < completeBlocks || block >= blockSamples.length)
+				{
+					throw new IllegalArgumentException("It isn't a checkpoint of the experiment.");
+				}
+				blockSamples[block] = Math.min(in.readInt(), getBlockSize(block));
+				samples += blockSamples[block];
+				lastMergedBlock = block + 1;
 			}
+			firstIncompleteBlock = completeBlocks;
+			lastMergedBlock = Math.max(lastMergedBlock, completeBlocks);
+
+			statistic.readFrom(in);
+			if(in.readBoolean()) profile.readFrom(in);
+			return samples;
 		}
 	}
 
+	/**
+	 * Derive the seed of the sample from the seed of the experiment.
+	 * @param sample number of the sample.
+	 * @return Seed of the sample's random stream.
+	 */
+	private long getSampleSeed(long sample)
+	{
+		// SplitMix64 finalizer over the Weyl sequence
+		long z = seed + (sample + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Stop the running experiment. Samples, which are being run, are finished,
+	 * the statistic keeps all finished samples. The cancelled experiment doesn't run again.
+	 */
+	public void cancel(){
+		isCancelled = true;
+	}
+
+	public boolean isCancelled(){
+		return isCancelled;
+	}
+
+	/**
+	 * @return Count of finished samples of the current run. It may be read from any thread.
+	 */
+	public int getCompletedSamples(){
+		return completedSamples.get();
+	}
+
+	/**
+	 * @return Count of clusterized lattices of the current run. It may be read from any thread.
+	 */
+	public long getCompletedLattices(){
+		return completedLattices.get();
+	}
+
 	public Statistic getStatistic(){
 		return statistic;
 	}
+
+	/**
+	 * @return Cluster statistics for each chance of the sweep engine or null for other engines.
+	 */
+	public ClusterProfile getClusterProfile(){
+		return profile;
+	}
 }
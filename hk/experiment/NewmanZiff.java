@@ -0,0 +1,129 @@
+package hk.experiment;
+
+import hk.UnionFind;
+import hk.cell.BitLattice;
+import hk.util.RandomSource;
+
+import static hk.experiment.TwoDimensionalPercolation.*;
+
+/**
+ * Newman-Ziff algorithm: sites are occupied one by one in random order,
+ * and clusters are merged by union-find with edge flags of the roots. Thresholds of percolation by X and by Y
+ * are found in one pass over the sites.
+ * The order is the random permutation, so sites don't need random values:
+ * if the lattice percolates after k of N sites, the threshold is k / (N + 1),
+ * the expected k-th smallest of N uniform values of the random field.
+ */
+public class NewmanZiff
+{
+	private final int rows, cols;
+	private final int[] order;
+	private final BitLattice occupied;
+	private final UnionFind sites;
+	private double thresholdByX, thresholdByY;
+
+	/**
+	 * @param rows,cols sizes of the lattice.
+	 */
+	public NewmanZiff(int rows, int cols)
+	{
+		if(rows < 1 || cols < 1 || (long)rows * cols > Integer.MAX_VALUE - 8)
+		{
+			throw new IllegalArgumentException();
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.occupied = new BitLattice(rows, cols);
+		this.order = new int[rows * cols];
+		this.sites = new UnionFind(order.length);
+	}
+
+	/**
+	 * Generate random order of sites and find thresholds of percolation on it.
+	 * @param gen random generator.
+	 */
+	public void sample(RandomSource gen)
+	{
+		final int count = order.length;
+
+		// Inside-out Fisher-Yates shuffle, so the order doesn't depend on the previous sample
+		for(int i = 0, j ; i < count ; i++)
+		{
+			j = nextIndex(gen, i + 1);
+			order[i] = order[j];
+			order[j] = i;
+		}
+
+		occupied.clear();
+		sites.clear();
+		for(int i = 0 ; i < count ; i++)
+		{
+			// Label of site i is i + 1
+			sites.mark(sites.makeSet(1), getEdges(i / cols, i % cols, rows, cols));
+		}
+
+		thresholdByX = thresholdByY = Double.NaN;
+		int site, x, y, root;
+		for(int k = 0 ; k < count ; k++)
+		{
+			site = order[k];
+			x = site / cols;
+			y = site - x * cols;
+			occupied.set(x, y, true);
+
+			root = site + 1;
+			if(x > 0 && occupied.get(x - 1, y)) root = sites.union(root, site + 1 - cols);
+			if(x < rows - 1 && occupied.get(x + 1, y)) root = sites.union(root, site + 1 + cols);
+			if(y > 0 && occupied.get(x, y - 1)) root = sites.union(root, site);
+			if(y < cols - 1 && occupied.get(x, y + 1)) root = sites.union(root, site + 2);
+
+			TwoDimensionalPercolation percolation = ofEdges(sites.getFlags(root));
+			if(percolation == NONE) continue;
+
+			double value = (k + 1.0) / (count + 1.0);
+			if(Double.isNaN(thresholdByX) && percolation.isByX())
+			{
+				thresholdByX = value;
+			}
+			if(Double.isNaN(thresholdByY) && percolation.isByY())
+			{
+				thresholdByY = value;
+			}
+			if(!Double.isNaN(thresholdByX) && !Double.isNaN(thresholdByY)) break;
+		}
+	}
+
+	/**
+	 * Uniform index by the multiply-shift method, biased values of the 32-bit word are rejected.
+	 * @param gen random generator.
+	 * @param bound count of indices.
+	 * @return Index from 0 inclusive to the bound exclusive.
+	 */
+	private static int nextIndex(RandomSource gen, int bound)
+	{
+		long product = (gen.nextLong() >>> 32) * bound;
+		if((product & 0xFFFFFFFFL) < bound)
+		{
+			final long rejected = (1L << 32) % bound;
+			while((product & 0xFFFFFFFFL) < rejected)
+			{
+				product = (gen.nextLong() >>> 32) * bound;
+			}
+		}
+		return (int)(product >>> 32);
+	}
+
+	/**
+	 * @return Threshold of percolation by X of the last sample.
+	 */
+	public double getThresholdByX(){
+		return thresholdByX;
+	}
+
+	/**
+	 * @return Threshold of percolation by Y of the last sample.
+	 */
+	public double getThresholdByY(){
+		return thresholdByY;
+	}
+}
@@ -1,96 +1,332 @@
 package hk.experiment;
 
+import java.io.*;
 import java.util.EnumMap;
 import static hk.experiment.TwoDimensionalPercolation.*;
 
+/**
+ * Thresholds of percolation for each kind of percolation: minimum, mean, maximum and variance.
+ * The mean and the sum of squared deviations are updated by Welford's method
+ * and merged by Chan's formula, so they stay accurate for any count of values.
+ * Standard errors and confidence intervals exist only for thresholds of samples,
+ * values of chances from {@link #put} aren't independent measurements of the threshold.
+ * Thresholds of the first percolation in any direction are kept apart from the kinds,
+ * so the NONE kind has only chances without percolation.
+ */
 public class Statistic
 {
-	private EnumMap<TwoDimensionalPercolation, Double> minPercolationThresholds =
-			new EnumMap<>(TwoDimensionalPercolation.class);
-	private EnumMap<TwoDimensionalPercolation, Double> averagePercolationThresholds =
-			new EnumMap<>(TwoDimensionalPercolation.class);
-	private EnumMap<TwoDimensionalPercolation, Double> maxPercolationThresholds =
-			new EnumMap<>(TwoDimensionalPercolation.class);
-	private EnumMap<TwoDimensionalPercolation, Long> addends =
+	/**
+	 * Count, minimum, mean, maximum and sum of squared deviations from the mean of values.
+	 */
+	private static class Accumulator
+	{
+		private long count = 0L;
+		private double min = 1.0, average = 0.0, max = 0.0, squaredDeviations = 0.0;
+
+		void add(double value)
+		{
+			double prevAverage = average;
+			count++;
+			average += (value - prevAverage) / count;
+			squaredDeviations += (value - prevAverage) * (value - average);
+			if(value < min) min = value;
+			if(value > max) max = value;
+		}
+
+		void merge(Accumulator other)
+		{
+			if(other.count == 0L) return;
+
+			long total = count + other.count;
+			double delta = other.average - average;
+			average += delta * other.count / total;
+			squaredDeviations += other.squaredDeviations + delta * delta * ((double)count * other.count / total);
+			count = total;
+			if(other.min < min) min = other.min;
+			if(other.max > max) max = other.max;
+		}
+
+		void writeTo(DataOutput out) throws IOException
+		{
+			out.writeLong(count);
+			out.writeDouble(min);
+			out.writeDouble(average);
+			out.writeDouble(max);
+			out.writeDouble(squaredDeviations);
+		}
+
+		void readFrom(DataInput in) throws IOException
+		{
+			count = in.readLong();
+			min = in.readDouble();
+			average = in.readDouble();
+			max = in.readDouble();
+			squaredDeviations = in.readDouble();
+		}
+
+		double getVariance(){
+			return (count < 2) ? 0.0 : squaredDeviations / (count - 1);
+		}
+	}
+
+	private EnumMap<TwoDimensionalPercolation, Accumulator> thresholds =
 			new EnumMap<>(TwoDimensionalPercolation.class);
+	/**
+	 * Thresholds of the first percolation in any direction.
+	 */
+	private Accumulator firstThresholds = new Accumulator();
+	private boolean hasChanceValues = false;
 
 	public Statistic()
 	{
-		minPercolationThresholds.put(NONE, 1.0);
-		minPercolationThresholds.put(BY_X, 1.0);
-		minPercolationThresholds.put(BY_Y, 1.0);
-		minPercolationThresholds.put(BY_XY, 1.0);
-		averagePercolationThresholds.put(NONE, 0.0);
-		averagePercolationThresholds.put(BY_X, 0.0);
-		averagePercolationThresholds.put(BY_Y, 0.0);
-		averagePercolationThresholds.put(BY_XY, 0.0);
-		maxPercolationThresholds.put(NONE, 0.0);
-		maxPercolationThresholds.put(BY_X, 0.0);
-		maxPercolationThresholds.put(BY_Y, 0.0);
-		maxPercolationThresholds.put(BY_XY, 0.0);
-		addends.put(NONE, 0L);
-		addends.put(BY_X, 0L);
-		addends.put(BY_Y, 0L);
-		addends.put(BY_XY, 0L);
+		for(TwoDimensionalPercolation key : TwoDimensionalPercolation.values())
+		{
+			thresholds.put(key, new Accumulator());
+		}
 	}
 
 	public void put(TwoDimensionalPercolation key, double value)
 	{
+		hasChanceValues = true;
 		if(key.equals(BY_XY))
 		{
-			this.addNewValue(BY_X, value);
-			this.addNewValue(BY_Y, value);
+			thresholds.get(BY_X).add(value);
+			thresholds.get(BY_Y).add(value);
 		}
 
-		this.addNewValue(key, value);
+		thresholds.get(key).add(value);
 	}
 
-	private double incrementMovingAverage(TwoDimensionalPercolation key, double newValue)
+	/**
+	 * Put percolation thresholds of one sample.
+	 * Percolation by the direction happens at chances above its threshold.
+	 * The smaller threshold is the threshold of the first percolation in any direction.
+	 * @param byX,byY thresholds of percolation by X and by Y.
+	 */
+	public void putThresholds(double byX, double byY)
 	{
-		double prevAverage = averagePercolationThresholds.get(key);
-		return prevAverage + (newValue - prevAverage) / addends.get(key);
+		thresholds.get(BY_X).add(byX);
+		thresholds.get(BY_Y).add(byY);
+		thresholds.get(BY_XY).add(Math.max(byX, byY));
+		firstThresholds.add(Math.min(byX, byY));
 	}
 
-	private void addNewValue(TwoDimensionalPercolation key, double value)
+	/**
+	 * Add values of other statistic to this one.
+	 * @param other merged statistic.
+	 */
+	public void merge(Statistic other)
 	{
-		addends.put(key, addends.get(key) + 1L);
-		averagePercolationThresholds.put(key, incrementMovingAverage(key, value));
-		if(value < minPercolationThresholds.get(key))
+		hasChanceValues |= other.hasChanceValues;
+		for(TwoDimensionalPercolation key : TwoDimensionalPercolation.values())
 		{
-			minPercolationThresholds.put(key, value);
+			thresholds.get(key).merge(other.thresholds.get(key));
 		}
-		if(value > maxPercolationThresholds.get(key))
+		firstThresholds.merge(other.firstThresholds);
+	}
+
+	/**
+	 * Write accumulated values.
+	 * @param out destination.
+	 * @throws IOException if the output fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		for(TwoDimensionalPercolation key : TwoDimensionalPercolation.values())
+		{
+			thresholds.get(key).writeTo(out);
+		}
+		firstThresholds.writeTo(out);
+		out.writeBoolean(hasChanceValues);
+	}
+
+	/**
+	 * Replace accumulated values by ones written by {@link #writeTo}.
+	 * @param in source.
+	 * @throws IOException if the input fails.
+	 */
+	public void readFrom(DataInput in) throws IOException
+	{
+		for(TwoDimensionalPercolation key : TwoDimensionalPercolation.values())
 		{
-			maxPercolationThresholds.put(key, value);
+			thresholds.get(key).readFrom(in);
 		}
+		firstThresholds.readFrom(in);
+		hasChanceValues = in.readBoolean();
+	}
+
+	public long getCount(TwoDimensionalPercolation key)
+	{
+		return thresholds.get(key).count;
 	}
 
 	public double getMinThreshold(TwoDimensionalPercolation key)
 	{
-		return minPercolationThresholds.get(key);
+		return thresholds.get(key).min;
 	}
 
 	public double getAverageThreshold(TwoDimensionalPercolation key)
 	{
-		return averagePercolationThresholds.get(key);
+		return thresholds.get(key).average;
 	}
 
 	public double getMaxThreshold(TwoDimensionalPercolation key)
 	{
-		return maxPercolationThresholds.get(key);
+		return thresholds.get(key).max;
+	}
+
+	/**
+	 * @param key kind of percolation.
+	 * @return Unbiased sample variance of thresholds or 0, if there are less than two values.
+	 */
+	public double getVariance(TwoDimensionalPercolation key)
+	{
+		return thresholds.get(key).getVariance();
+	}
+
+	public double getStandardDeviation(TwoDimensionalPercolation key)
+	{
+		return Math.sqrt(getVariance(key));
+	}
+
+	public long getFirstCount(){
+		return firstThresholds.count;
+	}
+
+	public double getFirstMinThreshold(){
+		return firstThresholds.min;
+	}
+
+	public double getFirstAverageThreshold(){
+		return firstThresholds.average;
+	}
+
+	public double getFirstMaxThreshold(){
+		return firstThresholds.max;
+	}
+
+	/**
+	 * @return True, if all values are thresholds of samples, so standard errors and intervals exist.
+	 */
+	public boolean hasSampleThresholds(){
+		return !hasChanceValues;
+	}
+
+	/**
+	 * @param key kind of percolation.
+	 * @return Standard error of the average threshold or infinity, if there are less than two values.
+	 * @throws IllegalStateException if values of chances are put.
+	 */
+	public double getStandardError(TwoDimensionalPercolation key)
+	{
+		return getStandardError(thresholds.get(key));
+	}
+
+	/**
+	 * Half-width of the normal confidence interval of the average threshold.
+	 * @param key kind of percolation.
+	 * @param confidence confidence level between 0 and 1, for example 0.95.
+	 * @return Half-width or infinity, if there are less than two values.
+	 * @throws IllegalStateException if values of chances are put.
+	 */
+	public double getConfidenceHalfWidth(TwoDimensionalPercolation key, double confidence)
+	{
+		return getConfidenceHalfWidth(thresholds.get(key), confidence);
+	}
+
+	/**
+	 * @return Standard error of the average threshold of the first percolation.
+	 * @see #getStandardError(TwoDimensionalPercolation)
+	 */
+	public double getFirstStandardError()
+	{
+		return getStandardError(firstThresholds);
+	}
+
+	/**
+	 * @param confidence confidence level between 0 and 1.
+	 * @return Half-width of the interval of the average threshold of the first percolation.
+	 * @see #getConfidenceHalfWidth(TwoDimensionalPercolation, double)
+	 */
+	public double getFirstConfidenceHalfWidth(double confidence)
+	{
+		return getConfidenceHalfWidth(firstThresholds, confidence);
+	}
+
+	private double getStandardError(Accumulator values)
+	{
+		if(hasChanceValues) throw new IllegalStateException("Values of chances aren't thresholds of samples.");
+		return (values.count < 2) ? Double.POSITIVE_INFINITY : Math.sqrt(values.getVariance() / values.count);
+	}
+
+	private double getConfidenceHalfWidth(Accumulator values, double confidence)
+	{
+		if(confidence <= 0.0 || confidence >= 1.0) throw new IllegalArgumentException();
+		return normalQuantile(0.5 + 0.5 * confidence) * getStandardError(values);
+	}
+
+	/**
+	 * Quantile of the standard normal distribution by Acklam's rational approximation,
+	 * the relative error is below 1.2e-9.
+	 * @param p probability between 0 and 1.
+	 * @return Value, which is not exceeded with probability p.
+	 */
+	static double normalQuantile(double p)
+	{
+		final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+				1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+		final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+				6.680131188771972e+01, -1.328068155288572e+01};
+		final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+				-2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+		final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+				3.754408661907416e+00};
+		final double low = 0.02425;
+		double q, r;
+
+		if(p <= 0.0 || p >= 1.0) throw new IllegalArgumentException();
+
+		// Tails
+		if(p < low || p > 1.0 - low)
+		{
+			q = Math.sqrt(-2.0 * Math.log(Math.min(p, 1.0 - p)));
+			double x = (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+					((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1.0);
+			return (p < low) ? x : -x;
+		}
+
+		// Central region
+		q = p - 0.5;
+		r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q /
+				(((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1.0);
 	}
 
 	@Override
 	public String toString(){
 		StringBuilder sb = new StringBuilder();
-		String nl = System.lineSeparator();
 		for(TwoDimensionalPercolation key : TwoDimensionalPercolation.values())
 		{
-			sb.append(key).append(':').append(nl);
-			sb.append("Minimal threshold: ").append(minPercolationThresholds.get(key)).append(nl);
-			sb.append("Average threshold: ").append(averagePercolationThresholds.get(key)).append(nl);
-			sb.append("Maximal threshold: ").append(maxPercolationThresholds.get(key)).append(nl);
+			append(sb, key.toString(), thresholds.get(key));
+		}
+		if(firstThresholds.count > 0L)
+		{
+			append(sb, "First percolation", firstThresholds);
 		}
 		return sb.toString();
 	}
+
+	private void append(StringBuilder sb, String kind, Accumulator values)
+	{
+		String nl = System.lineSeparator();
+		sb.append(kind).append(':').append(nl);
+		sb.append("Minimal threshold: ").append(values.min).append(nl);
+		sb.append("Average threshold: ").append(values.average).append(nl);
+		sb.append("Maximal threshold: ").append(values.max).append(nl);
+		if(!hasChanceValues && values.count >= 2)
+		{
+			sb.append("Standard error: ").append(getStandardError(values)).append(nl);
+			sb.append("95% confidence interval: +/-").append(getConfidenceHalfWidth(values, 0.95)).append(nl);
+		}
+	}
 }
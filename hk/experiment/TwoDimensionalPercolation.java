@@ -2,8 +2,7 @@ package hk.experiment;
 
 import hk.cell.CellRange;
 import hk.cell.*;
-
-import java.util.*;
+import hk.util.LabelMarker;
 
 public enum TwoDimensionalPercolation
 {
@@ -12,43 +11,189 @@ public enum TwoDimensionalPercolation
 	BY_Y,
 	BY_XY;
 
+	/**
+	 * Flags of the lattice edges, which are touched by a cluster.
+	 */
+	public static final int LEFT_EDGE = 1, RIGHT_EDGE = 2, TOP_EDGE = 4, BOTTOM_EDGE = 8;
+
+	/**
+	 * @return True, if there is percolation by X.
+	 */
+	public boolean isByX(){
+		return this == BY_X || this == BY_XY;
+	}
+
+	/**
+	 * @return True, if there is percolation by Y.
+	 */
+	public boolean isByY(){
+		return this == BY_Y || this == BY_XY;
+	}
+
+	/**
+	 * @param byX,byY is there percolation by the direction.
+	 * @return Kind of percolation.
+	 */
+	public static TwoDimensionalPercolation of(boolean byX, boolean byY)
+	{
+		if(byX)
+		{
+			return byY ? BY_XY : BY_X;
+		}
+		return byY ? BY_Y : NONE;
+	}
+
+	/**
+	 * @param edges edge flags of a cluster.
+	 * @return Kind of percolation by the cluster.
+	 */
+	public static TwoDimensionalPercolation ofEdges(int edges)
+	{
+		return of((edges & (LEFT_EDGE | RIGHT_EDGE)) == (LEFT_EDGE | RIGHT_EDGE),
+				(edges & (TOP_EDGE | BOTTOM_EDGE)) == (TOP_EDGE | BOTTOM_EDGE));
+	}
+
+	/**
+	 * @param x,y coordinates of the site.
+	 * @param rows,cols sizes of the lattice.
+	 * @return Flags of the edges, which the site belongs to.
+	 */
+	public static int getEdges(int x, int y, int rows, int cols)
+	{
+		int edges = 0;
+		if(y == 0) edges |= LEFT_EDGE;
+		if(y == cols - 1) edges |= RIGHT_EDGE;
+		if(x == 0) edges |= TOP_EDGE;
+		if(x == rows - 1) edges |= BOTTOM_EDGE;
+		return edges;
+	}
+
 	public static TwoDimensionalPercolation checkEdges(Cell[][] lattice)
 	{
-		boolean percolationByX = isHaveIntersection(CellRange.getEdge(lattice, BY_X, true),
-				CellRange.getEdge(lattice, BY_X, false));
-		boolean percolationByY = isHaveIntersection(CellRange.getEdge(lattice, BY_Y, true),
-				CellRange.getEdge(lattice, BY_Y, false));
+		return checkEdges(new CellGrid(lattice));
+	}
+
+	public static TwoDimensionalPercolation checkEdges(CellGrid lattice)
+	{
+		final int[] values = lattice.getValues();
+		final int rows = lattice.getRows(), cols = lattice.getCols();
+		int maxLabel = Math.max(
+				Math.max(getMaxLabel(values, 0, cols, rows), getMaxLabel(values, cols - 1, cols, rows)),
+				Math.max(getMaxLabel(values, 0, 1, cols), getMaxLabel(values, (rows - 1) * cols, 1, cols)));
+		return checkEdges(lattice, maxLabel, new LabelMarker());
+	}
 
-		int result = (percolationByX ? 2 : 0) + (percolationByY ? 1 : 0);
+	/**
+	 * Check, whether any cluster connects opposite edges of the lattice.
+	 * Edges are scanned by indices of the grid, so nothing is allocated.
+	 * @param lattice labeled lattice.
+	 * @param maxLabel maximal label of the lattice.
+	 * @param marker marker for labels, it is reused between calls.
+	 * @return Kind of percolation.
+	 */
+	public static TwoDimensionalPercolation checkEdges(CellGrid lattice, int maxLabel, LabelMarker marker)
+	{
+		final int[] values = lattice.getValues();
+		final int rows = lattice.getRows(), cols = lattice.getCols();
 
-		switch(result)
-		{
-			case 1:
-				return BY_Y;
+		// Left and right columns, then top and bottom rows
+		boolean percolationByX = isHaveIntersection(values, 0, cols - 1, cols, rows, maxLabel, marker);
+		boolean percolationByY = isHaveIntersection(values, 0, (rows - 1) * cols, 1, cols, maxLabel, marker);
 
-			case 2:
-				return BY_X;
+		return of(percolationByX, percolationByY);
+	}
 
-			case 3:
-				return BY_XY;
+	/**
+	 * Check, whether two lines of the grid have common non-zero labels.
+	 * @param values values of the grid.
+	 * @param first,second indices of the first sites of lines.
+	 * @param stride distance between sites of the line.
+	 * @param length count of sites of the line.
+	 * @param maxLabel maximal label of lines.
+	 * @param marker marker for labels.
+	 * @return True, if there is a common label.
+	 */
+	private static boolean isHaveIntersection(int[] values, int first, int second, int stride, int length,
+			int maxLabel, LabelMarker marker)
+	{
+		marker.reset(maxLabel);
+
+		for(int k = 0, index = first ; k < length ; k++, index += stride)
+		{
+			marker.mark(values[index]);
+		}
+
+		int value;
+		for(int k = 0, index = second ; k < length ; k++, index += stride)
+		{
+			value = values[index];
+			if(value != 0 && marker.isMarked(value)) return true;
 		}
 
-		return NONE;
+		return false;
+	}
+
+	private static int getMaxLabel(int[] values, int first, int stride, int length)
+	{
+		int result = 0;
+		for(int k = 0, index = first ; k < length ; k++, index += stride)
+		{
+			if(values[index] > result) result = values[index];
+		}
+		return result;
 	}
 
 	public static boolean isHaveIntersection(CellRange first, CellRange second)
 	{
-		Set<Integer> firstSet = new HashSet<>(), secondSet = new HashSet<>();
-		for(CellRange.CellIterator firstIt = (CellRange.CellIterator)first.iterator(),
-				    secondIt = (CellRange.CellIterator)second.iterator() ;
-				firstIt.hasNext() ;)
+		int maxLabel = Math.max(getMaxLabel(first), getMaxLabel(second));
+		return isHaveIntersection(first, second, maxLabel, new LabelMarker());
+	}
+
+	/**
+	 * Check, whether slices have common non-zero labels.
+	 * @param first,second slices of the lattice.
+	 * @param maxLabel maximal label of the slices.
+	 * @param marker marker for labels.
+	 * @return True, if there is a common label.
+	 */
+	public static boolean isHaveIntersection(CellRange first, CellRange second, int maxLabel, LabelMarker marker)
+	{
+		marker.reset(maxLabel);
+
+		final int[] firstValues = first.getGrid().getValues();
+		for(CellRange.Cursor cursor = first.cursor() ; cursor.nextRow() ; )
+		{
+			for(int index = cursor.getRowStart(), end = cursor.getRowEnd() ; index < end ; index++)
+			{
+				marker.mark(firstValues[index]);
+			}
+		}
+
+		final int[] secondValues = second.getGrid().getValues();
+		int value;
+		for(CellRange.Cursor cursor = second.cursor() ; cursor.nextRow() ; )
 		{
-			firstSet.add(firstIt.next().getValue());
-			secondSet.add(secondIt.next().getValue());
+			for(int index = cursor.getRowStart(), end = cursor.getRowEnd() ; index < end ; index++)
+			{
+				value = secondValues[index];
+				if(value != 0 && marker.isMarked(value)) return true;
+			}
 		}
-		firstSet.remove(0);
-		firstSet.retainAll(secondSet);
 
-		return !firstSet.isEmpty();
+		return false;
+	}
+
+	private static int getMaxLabel(CellRange range)
+	{
+		final int[] values = range.getGrid().getValues();
+		int result = 0;
+		for(CellRange.Cursor cursor = range.cursor() ; cursor.nextRow() ; )
+		{
+			for(int index = cursor.getRowStart(), end = cursor.getRowEnd() ; index < end ; index++)
+			{
+				if(values[index] > result) result = values[index];
+			}
+		}
+		return result;
 	}
 }
@@ -0,0 +1,454 @@
+package hk.util;
+
+import hk.cell.BitLattice;
+import hk.cell.CellGrid;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary lattice file. Header of 32 bytes in little-endian order:
+ * magic, version, encoding, rows, cols and count of units per row as ints.
+ * Bit-packed encoding is followed by rows of little-endian longs,
+ * each row starts from a new word like in {@link BitLattice}.
+ * Label encoding is followed by rows of little-endian int labels.
+ */
+public class BinaryLatticeFormat
+{
+	public static final int MAGIC = 0x54414C50;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	/**
+	 * Encoding of sites: one bit per site.
+	 */
+	public static final int BITS = 1;
+
+	/**
+	 * Encoding of sites: int label of the cluster per site, zero for empty site.
+	 */
+	public static final int LABELS = 2;
+
+	/**
+	 * Rows are written by chunks of about this size.
+	 */
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Tiles for parallel loading are about this size.
+	 */
+	private static final long TILE_SIZE = 8L << 20;
+
+	/**
+	 * Receiver of the progress of loading. It's called by loading threads.
+	 */
+	public interface Progress
+	{
+		/**
+		 * @param loaded count of loaded rows.
+		 * @param rows count of rows of the lattice.
+		 */
+		void update(long loaded, long rows);
+	}
+
+	/**
+	 * Header of the binary lattice file.
+	 */
+	public static class Header
+	{
+		private final int encoding, rows, cols, rowUnits;
+
+		public Header(int encoding, int rows, int cols)
+		{
+			if(rows < 1 || cols < 1) throw new IllegalArgumentException("Wrong sizes of the lattice.");
+			if(encoding != BITS && encoding != LABELS)
+			{
+				throw new IllegalArgumentException("Unsupported encoding of binary lattice.");
+			}
+			this.encoding = encoding;
+			this.rows = rows;
+			this.cols = cols;
+			// Longs of bits or int labels
+			this.rowUnits = (encoding == BITS) ? (cols + 63) >>> 6 : cols;
+		}
+
+		public int getEncoding(){
+			return encoding;
+		}
+
+		public int getRows(){
+			return rows;
+		}
+
+		public int getCols(){
+			return cols;
+		}
+
+		/**
+		 * @return Count of bytes of one row.
+		 */
+		public long getRowSize(){
+			return (encoding == BITS) ? 8L * rowUnits : 4L * rowUnits;
+		}
+
+		/**
+		 * @return Mask of sites in the last word of the bit-packed row.
+		 */
+		public long getLastWordMask(){
+			return ((cols & 63) == 0) ? -1L : (1L << (cols & 63)) - 1L;
+		}
+
+		/**
+		 * @param x row of the lattice.
+		 * @return Position of the row in the file.
+		 */
+		public long getRowPosition(long x){
+			return HEADER_SIZE + x * getRowSize();
+		}
+
+		ByteBuffer toBuffer()
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(encoding)
+					.putInt(rows).putInt(cols).putInt(rowUnits);
+			buffer.clear();
+			return buffer;
+		}
+
+		static Header fromBuffer(ByteBuffer buffer)
+		{
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+			{
+				throw new IllegalArgumentException("It isn't a binary lattice.");
+			}
+			if(buffer.getInt() != VERSION)
+			{
+				throw new IllegalArgumentException("Unsupported version of binary lattice.");
+			}
+			Header header = new Header(buffer.getInt(), buffer.getInt(), buffer.getInt());
+			if(buffer.getInt() != header.rowUnits)
+			{
+				throw new IllegalArgumentException("Wrong row size of binary lattice.");
+			}
+			return header;
+		}
+	}
+
+	/**
+	 * Check the magic number of the file.
+	 * @param file checked file.
+	 * @return True, if the file is binary lattice.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static boolean isBinary(File file) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new FileInputStream(file)))
+		{
+			return Integer.reverseBytes(in.readInt()) == MAGIC;
+		}
+		catch(EOFException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Read the header of the file.
+	 * @param channel channel of the file.
+	 * @return Header of the lattice.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static Header readHeader(FileChannel channel) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, buffer.position()) < 0) break;
+		}
+		buffer.flip();
+		Header header = Header.fromBuffer(buffer);
+		if(channel.size() < header.getRowPosition(header.getRows()))
+		{
+			throw new IllegalArgumentException("Binary lattice is truncated.");
+		}
+		return header;
+	}
+
+	/**
+	 * Write the lattice to the file.
+	 * @param lattice written lattice.
+	 * @param file destination.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void write(BitLattice lattice, File file) throws IOException
+	{
+		try(OutputStream out = new FileOutputStream(file))
+		{
+			write(lattice, out);
+		}
+	}
+
+	/**
+	 * Write the lattice in bit-packed encoding. Rows are written by chunks.
+	 * @param lattice written lattice.
+	 * @param out destination, it isn't closed.
+	 * @throws IOException if the stream can't be written.
+	 */
+	public static void write(BitLattice lattice, OutputStream out) throws IOException
+	{
+		Header header = new Header(BITS, lattice.getRows(), lattice.getCols());
+		out.write(header.toBuffer().array());
+
+		final long[] words = lattice.getWords();
+		final int wordsPerRow = lattice.getWordsPerRow();
+		final int rowsPerChunk = Math.max(1, (CHUNK_SIZE >>> 3) / wordsPerRow);
+		ByteBuffer buffer = ByteBuffer.allocate(8 * rowsPerChunk * wordsPerRow).order(ByteOrder.LITTLE_ENDIAN);
+		LongBuffer longs = buffer.asLongBuffer();
+		for(int x = 0, count ; x < lattice.getRows() ; x += rowsPerChunk)
+		{
+			count = Math.min(rowsPerChunk, lattice.getRows() - x);
+			longs.clear();
+			longs.put(words, lattice.getRowOffset(x), count * wordsPerRow);
+			out.write(buffer.array(), 0, 8 * count * wordsPerRow);
+		}
+	}
+
+	/**
+	 * Write labels of the lattice to the file.
+	 * @param lattice written labels.
+	 * @param file destination.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void write(CellGrid lattice, File file) throws IOException
+	{
+		try(OutputStream out = new FileOutputStream(file))
+		{
+			write(lattice, out);
+		}
+	}
+
+	/**
+	 * Write labels of the lattice in label encoding. Rows are written by chunks.
+	 * @param lattice written labels.
+	 * @param out destination, it isn't closed.
+	 * @throws IOException if the stream can't be written.
+	 */
+	public static void write(CellGrid lattice, OutputStream out) throws IOException
+	{
+		Header header = new Header(LABELS, lattice.getRows(), lattice.getCols());
+		out.write(header.toBuffer().array());
+
+		final int[] values = lattice.getValues();
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		IntBuffer ints = buffer.asIntBuffer();
+		for(int index = 0, count ; index < values.length ; index += count)
+		{
+			count = Math.min(CHUNK_SIZE >>> 2, values.length - index);
+			ints.clear();
+			ints.put(values, index, count);
+			out.write(buffer.array(), 0, 4 * count);
+		}
+	}
+
+	/**
+	 * Load labels from the file of label encoding.
+	 * @param file binary labeled lattice.
+	 * @return Loaded labels.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static CellGrid readLabels(File file) throws IOException
+	{
+		try(FileChannel channel = new RandomAccessFile(file, "r").getChannel())
+		{
+			Header header = readHeader(channel);
+			if(header.getEncoding() != LABELS) throw new IllegalArgumentException("Lattice isn't labeled.");
+
+			CellGrid lattice = new CellGrid(header.getRows(), header.getCols());
+			final int[] values = lattice.getValues();
+			final int rowsPerTile = (int)Math.max(1, TILE_SIZE / header.getRowSize());
+			for(int x = 0, count ; x < header.getRows() ; x += rowsPerTile)
+			{
+				count = Math.min(rowsPerTile, header.getRows() - x);
+				channel.map(FileChannel.MapMode.READ_ONLY, header.getRowPosition(x), count * header.getRowSize())
+						.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+						.get(values, x * header.getCols(), count * header.getCols());
+			}
+			return lattice;
+		}
+	}
+
+	/**
+	 * Load the lattice from the file. Tiles of rows are mapped to memory
+	 * and copied to the lattice in parallel.
+	 * The lattice is the copy of the file, so bits after the last column are cleared.
+	 * @param file binary lattice.
+	 * @return Loaded lattice.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static BitLattice read(File file) throws IOException
+	{
+		return read(file, (Progress)null);
+	}
+
+	/**
+	 * Load the lattice from the file. Tiles of rows are mapped to memory
+	 * and copied to the lattice in parallel. The interrupted loading stops after running tiles.
+	 * @param file binary lattice.
+	 * @param progress receiver of the progress or null.
+	 * @return Loaded lattice.
+	 * @throws InterruptedIOException if the thread is interrupted.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static BitLattice read(File file, Progress progress) throws IOException
+	{
+		ForkJoinPool pool = new ForkJoinPool();
+		try
+		{
+			return read(file, pool, progress);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Load the lattice from the file. Tiles of rows are mapped to memory
+	 * and copied to the lattice in parallel. Labeled sites of label encoding are occupied.
+	 * @param file binary lattice.
+	 * @param pool pool for loading tasks.
+	 * @return Loaded lattice.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static BitLattice read(File file, ForkJoinPool pool) throws IOException
+	{
+		return read(file, pool, null);
+	}
+
+	/**
+	 * Load the lattice from the file. Tiles of rows are mapped to memory
+	 * and copied to the lattice in parallel. Labeled sites of label encoding are occupied.
+	 * @param file binary lattice.
+	 * @param pool pool for loading tasks.
+	 * @param progress receiver of the progress or null.
+	 * @return Loaded lattice.
+	 * @throws InterruptedIOException if the thread is interrupted.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static BitLattice read(File file, ForkJoinPool pool, final Progress progress) throws IOException
+	{
+		try(final FileChannel channel = new RandomAccessFile(file, "r").getChannel())
+		{
+			final Header header = readHeader(channel);
+			final AtomicLong loaded = new AtomicLong();
+			final BitLattice lattice = new BitLattice(header.getRows(), header.getCols());
+			final int rowsPerTile = (int)Math.max(1, TILE_SIZE / header.getRowSize());
+
+			final List<Callable<Void>> tiles = new ArrayList<>();
+			for(int x = 0 ; x < header.getRows() ; x += rowsPerTile)
+			{
+				final int start = x, count = Math.min(rowsPerTile, header.getRows() - x);
+				tiles.add(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws IOException
+					{
+						MappedByteBuffer tile = channel.map(FileChannel.MapMode.READ_ONLY,
+								header.getRowPosition(start), count * header.getRowSize());
+						tile.order(ByteOrder.LITTLE_ENDIAN);
+						if(header.getEncoding() == BITS)
+						{
+							final long[] words = lattice.getWords();
+							final int wordsPerRow = lattice.getWordsPerRow();
+							tile.asLongBuffer().get(words, lattice.getRowOffset(start), count * wordsPerRow);
+
+							// Foreign files may have garbage in the padding, which would be occupied sites
+							final long mask = header.getLastWordMask();
+							for(int x = start ; x < start + count ; x++)
+							{
+								words[lattice.getRowOffset(x) + wordsPerRow - 1] &= mask;
+							}
+						}
+						else
+						{
+							IntBuffer labels = tile.asIntBuffer();
+							for(int x = start ; x < start + count ; x++)
+							{
+								for(int y = 0 ; y < header.getCols() ; y++)
+								{
+									if(labels.get() != 0) lattice.set(x, y, true);
+								}
+							}
+						}
+
+						if(progress != null) progress.update(loaded.addAndGet(count), header.getRows());
+						return null;
+					}
+				});
+			}
+
+			for(Future<Void> tile : pool.invokeAll(tiles))
+			{
+				tile.get();
+			}
+			return lattice;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Convert the text lattice to the binary one. Rows are streamed,
+	 * so the text lattice isn't kept in memory.
+	 * @param text lattice in text format.
+	 * @param file destination.
+	 * @return Count of converted rows.
+	 * @throws IOException if files can't be read or written.
+	 */
+	public static int convert(Reader text, File file) throws IOException
+	{
+		TextRowSource source = new TextRowSource(text);
+		try(FileChannel channel = new RandomAccessFile(file, "rw").getChannel())
+		{
+			channel.truncate(0);
+			long[] row = new long[(source.getCols() + 63) >>> 6];
+			ByteBuffer buffer = ByteBuffer.allocate(8 * row.length).order(ByteOrder.LITTLE_ENDIAN);
+
+			int rows = 0;
+			while(source.nextRow(row))
+			{
+				buffer.clear();
+				buffer.asLongBuffer().put(row);
+				writeFully(channel, buffer, HEADER_SIZE + (long)rows * buffer.capacity());
+				Arrays.fill(row, 0L);
+				if(++rows < 0) throw new IllegalArgumentException("Too many rows.");
+			}
+
+			// Count of rows is known only at the end
+			if(rows == 0) throw new IllegalArgumentException("Lattice has no rows.");
+			writeFully(channel, new Header(BITS, rows, source.getCols()).toBuffer(), 0);
+			return rows;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while(buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package hk.util;
+
+import java.util.Random;
+
+/**
+ * Adapter of java.util.Random. Values are the same as ones of the wrapped generator.
+ */
+public class JdkRandomSource extends RandomSource
+{
+	private final Random gen;
+
+	/**
+	 * @param gen wrapped generator.
+	 */
+	public JdkRandomSource(Random gen)
+	{
+		this.gen = gen;
+	}
+
+	@Override
+	public long nextLong(){
+		return gen.nextLong();
+	}
+
+	@Override
+	public int nextInt(){
+		return gen.nextInt();
+	}
+
+	@Override
+	public double nextDouble(){
+		return gen.nextDouble();
+	}
+
+	@Override
+	public void setSeed(long seed){
+		gen.setSeed(seed);
+	}
+}
@@ -0,0 +1,38 @@
+package hk.util;
+
+/**
+ * Set of cluster labels, which is cleared in constant time.
+ * A label is marked, if its element equals the current stamp.
+ */
+public class LabelMarker
+{
+	private int[] marks = new int[1];
+	private int stamp = 0;
+
+	/**
+	 * Unmark all labels and prepare room for them.
+	 * @param maxLabel maximal label, which may be marked.
+	 */
+	public void reset(int maxLabel)
+	{
+		if(marks.length <= maxLabel)
+		{
+			marks = new int[maxLabel + 1];
+			stamp = 0;
+		}
+		if(++stamp == 0)
+		{
+			// Stamps are over, clear marks once
+			java.util.Arrays.fill(marks, 0);
+			stamp = 1;
+		}
+	}
+
+	public void mark(int label){
+		marks[label] = stamp;
+	}
+
+	public boolean isMarked(int label){
+		return marks[label] == stamp;
+	}
+}
@@ -0,0 +1,28 @@
+package hk.util;
+
+/**
+ * Malformed text lattice. Keeps the position of the error.
+ */
+public class LatticeFormatException extends NumberFormatException
+{
+	private final int line, column;
+
+	/**
+	 * @param message description of the error.
+	 * @param line,column position of the error, starting from 1.
+	 */
+	public LatticeFormatException(String message, int line, int column)
+	{
+		super("Line " + line + ", column " + column + ": " + message);
+		this.line = line;
+		this.column = column;
+	}
+
+	public int getLine(){
+		return line;
+	}
+
+	public int getColumn(){
+		return column;
+	}
+}
@@ -3,7 +3,8 @@ package hk.util;
 import hk.Lattice;
 import hk.cell.*;
 
-import java.util.regex.*;
+import java.io.*;
+import java.util.Arrays;
 
 public class LatticeParser
 {
@@ -15,25 +16,59 @@ public class LatticeParser
 	 */
 	public static Lattice parse(CharSequence seq) throws NumberFormatException
 	{
-		Pattern linePattern = Pattern.compile(";"),
-			colonPattern = Pattern.compile(",");
+		try
+		{
+			return parse(new StringReader(seq.toString()));
+		}
+		catch(IOException e)
+		{
+			// String reader doesn't throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Load lattice from the reader in one pass. Rows go straight to the bit-packed lattice.
+	 * @param reader source file.
+	 * @return ready lattice for applying Hoshen-Kopelman algorithm.
+	 * @throws IOException if the reader fails.
+	 * @throws LatticeFormatException if the text is malformed.
+	 */
+	public static Lattice parse(Reader reader) throws IOException
+	{
+		return new Lattice(parseOccupancy(reader));
+	}
 
-		String[] lines = linePattern.split(seq);
-		String[] elements = colonPattern.split(lines[0]);
-		int rows = lines.length, cols = elements.length;
-		Cell[][] cells = new Cell[rows][cols];
+	/**
+	 * Load occupancy lattice from the reader in one pass.
+	 * @param reader source file.
+	 * @return Occupancy lattice.
+	 * @throws IOException if the reader fails.
+	 * @throws LatticeFormatException if the text is malformed.
+	 */
+	public static BitLattice parseOccupancy(Reader reader) throws IOException
+	{
+		TextRowSource source = new TextRowSource(reader);
+		final int wordsPerRow = (source.getCols() + 63) >>> 6;
+		long[] words = new long[16 * wordsPerRow];
+		long[] row = new long[wordsPerRow];
+		int rows = 0;
 
-		int i = 0;
-		while(true)
+		while(source.nextRow(row))
 		{
-			for(int j = 0 ; j < cols ; j++)
+			if((long)(rows + 1) * wordsPerRow > words.length)
 			{
-				cells[i][j] = new Cell(Integer.valueOf(elements[j]));
+				long capacity = Math.min(2L * words.length, Integer.MAX_VALUE - 8);
+				if(capacity < (long)(rows + 1) * wordsPerRow)
+				{
+					throw new LatticeFormatException("Lattice is too large.", source.getLine(), 1);
+				}
+				words = Arrays.copyOf(words, (int)capacity);
 			}
-			if(++i >= rows || i < 0) break;
-			elements = colonPattern.split(lines[i]);
+			System.arraycopy(row, 0, words, rows * wordsPerRow, wordsPerRow);
+			++rows;
 		}
 
-		return new Lattice(cells);
+		return new BitLattice(rows, source.getCols(), words);
 	}
 }
@@ -0,0 +1,130 @@
+package hk.util;
+
+import hk.cell.BitLattice;
+import hk.cell.CellGrid;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer of lattices in the text format, which is read by {@link LatticeParser}:
+ * values of the row are separated by commas, rows are separated by line separators.
+ * Characters are written by chunks from one buffer without strings of sites.
+ */
+public class LatticePrinter
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * Enough space for one value with its separator.
+	 */
+	private static final int VALUE_SPACE = 16;
+
+	private final Writer writer;
+	private final char[] separator = System.lineSeparator().toCharArray();
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int length = 0;
+
+	/**
+	 * @param writer destination, it isn't closed.
+	 */
+	public LatticePrinter(Writer writer)
+	{
+		this.writer = writer;
+	}
+
+	/**
+	 * Write occupancy of sites as 0 and 1.
+	 * @param lattice written lattice.
+	 * @throws IOException if the writer fails.
+	 */
+	public void print(BitLattice lattice) throws IOException
+	{
+		final long[] words = lattice.getWords();
+		final int cols = lattice.getCols();
+		long word = 0;
+
+		for(int x = 0 ; x < lattice.getRows() ; x++)
+		{
+			int offset = lattice.getRowOffset(x);
+			for(int y = 0 ; y < cols ; y++)
+			{
+				if((y & 63) == 0) word = words[offset + (y >>> 6)];
+				ensureSpace();
+				if(y > 0) buffer[length++] = ',';
+				buffer[length++] = ((word >>> y) & 1L) != 0 ? '1' : '0';
+			}
+			endRow();
+		}
+		flush();
+	}
+
+	/**
+	 * Write labels of sites.
+	 * @param lattice written labels.
+	 * @throws IOException if the writer fails.
+	 */
+	public void print(CellGrid lattice) throws IOException
+	{
+		final int[] values = lattice.getValues();
+		final int cols = lattice.getCols();
+
+		for(int x = 0, index = 0 ; x < lattice.getRows() ; x++)
+		{
+			for(int y = 0 ; y < cols ; y++, index++)
+			{
+				ensureSpace();
+				if(y > 0) buffer[length++] = ',';
+				appendInt(values[index]);
+			}
+			endRow();
+		}
+		flush();
+	}
+
+	private void appendInt(int value)
+	{
+		if(value >= 0 && value < 10)
+		{
+			buffer[length++] = (char)('0' + value);
+			return;
+		}
+
+		// Digits are written from the end, the long value keeps the sign of Integer.MIN_VALUE
+		long rest = value;
+		if(rest < 0)
+		{
+			buffer[length++] = '-';
+			rest = -rest;
+		}
+		int digits = 1;
+		for(long bound = 10 ; bound <= rest ; bound *= 10) digits++;
+		for(int i = length + digits - 1 ; i >= length ; i--)
+		{
+			buffer[i] = (char)('0' + rest % 10);
+			rest /= 10;
+		}
+		length += digits;
+	}
+
+	private void endRow() throws IOException
+	{
+		ensureSpace();
+		for(char c : separator) buffer[length++] = c;
+	}
+
+	private void ensureSpace() throws IOException
+	{
+		if(length > BUFFER_SIZE - VALUE_SPACE - separator.length)
+		{
+			writer.write(buffer, 0, length);
+			length = 0;
+		}
+	}
+
+	private void flush() throws IOException
+	{
+		writer.write(buffer, 0, length);
+		length = 0;
+		writer.flush();
+	}
+}
@@ -0,0 +1,84 @@
+package hk.util;
+
+import hk.RowSource;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * Source of rows from the binary lattice file.
+ * The file is mapped to memory by windows, each row is copied from the window to the row of the caller
+ * without intermediate buffers. Bits after the last column are cleared.
+ */
+public class MappedRowSource implements RowSource, Closeable
+{
+	/**
+	 * Mapped window is about this size.
+	 */
+	private static final long WINDOW_SIZE = 64L << 20;
+
+	private final FileChannel channel;
+	private final BinaryLatticeFormat.Header header;
+	private final int rowsPerWindow;
+	private LongBuffer window;
+	private int current = 0;
+
+	/**
+	 * @param file binary lattice.
+	 * @throws IOException if the file can't be read.
+	 */
+	public MappedRowSource(File file) throws IOException
+	{
+		channel = new RandomAccessFile(file, "r").getChannel();
+		try
+		{
+			header = BinaryLatticeFormat.readHeader(channel);
+			if(header.getEncoding() != BinaryLatticeFormat.BITS)
+			{
+				throw new IllegalArgumentException("Only bit-packed lattice can be streamed.");
+			}
+		}
+		catch(IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+		rowsPerWindow = (int)Math.max(1, WINDOW_SIZE / header.getRowSize());
+	}
+
+	public int getRows(){
+		return header.getRows();
+	}
+
+	@Override
+	public int getCols(){
+		return header.getCols();
+	}
+
+	@Override
+	public boolean nextRow(long[] row) throws IOException
+	{
+		if(current == header.getRows()) return false;
+
+		if(window == null || !window.hasRemaining())
+		{
+			int count = Math.min(rowsPerWindow, header.getRows() - current);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, header.getRowPosition(current),
+					count * header.getRowSize()).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		}
+
+		final int words = (int)(header.getRowSize() >>> 3);
+		window.get(row, 0, words);
+		row[words - 1] &= header.getLastWordMask();
+		++current;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		window = null;
+		channel.close();
+	}
+}
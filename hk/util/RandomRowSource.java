@@ -0,0 +1,56 @@
+package hk.util;
+
+import hk.RowSource;
+
+/**
+ * Source of random rows, where each site is occupied with the given chance.
+ * Each random word gives two 32-bit thresholds of sites, which are compared with the chance.
+ */
+public class RandomRowSource implements RowSource
+{
+	private final long rows;
+	private final int cols;
+	private final long level;
+	private final RandomSource gen;
+	private long current = 0;
+
+	/**
+	 * @param rows,cols sizes of the lattice.
+	 * @param chance chance of the site to be occupied.
+	 * @param gen random generator.
+	 */
+	public RandomRowSource(long rows, int cols, double chance, RandomSource gen)
+	{
+		if(rows < 1 || cols < 1 || chance < 0.0 || chance > 1.0) throw new IllegalArgumentException();
+		this.rows = rows;
+		this.cols = cols;
+		this.level = (long)Math.ceil(chance * (1L << 32));
+		this.gen = gen;
+	}
+
+	@Override
+	public int getCols(){
+		return cols;
+	}
+
+	@Override
+	public boolean nextRow(long[] row)
+	{
+		if(current == rows) return false;
+		++current;
+
+		long word, random;
+		for(int j = 0, w = 0 ; j < cols ; j += 64, w++)
+		{
+			word = 0L;
+			for(int k = 0, end = Math.min(64, cols - j) ; k < end ; k += 2)
+			{
+				random = gen.nextLong();
+				word |= (((random & 0xFFFFFFFFL) - level) >>> 63) << k;
+				if(k + 1 < end) word |= (((random >>> 32) - level) >>> 63) << (k + 1);
+			}
+			row[w] = word;
+		}
+		return true;
+	}
+}
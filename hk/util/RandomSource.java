@@ -0,0 +1,90 @@
+package hk.util;
+
+import java.util.Random;
+
+/**
+ * Generator of random 64-bit words for random fields of lattices.
+ * Generators aren't thread-safe, each thread uses its own one.
+ */
+public abstract class RandomSource
+{
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	/**
+	 * Kind of the generator, which is chosen by name.
+	 */
+	public enum Kind
+	{
+		/**
+		 * SplitMix64: one addition and the 64-bit finalizer per word.
+		 */
+		SPLITMIX64
+		{
+			@Override
+			public RandomSource create(long seed){
+				return new SplitMix64(seed);
+			}
+		},
+		/**
+		 * java.util.SplittableRandom of the JDK. Its words are the same as ones of SplitMix64.
+		 */
+		SPLITTABLE
+		{
+			@Override
+			public RandomSource create(long seed){
+				return new SplittableRandomSource(seed);
+			}
+		},
+		/**
+		 * Xoshiro256++: 256 bits of state, the period is 2^256 - 1.
+		 */
+		XOSHIRO256PP
+		{
+			@Override
+			public RandomSource create(long seed){
+				return new Xoshiro256PlusPlus(seed);
+			}
+		},
+		/**
+		 * Linear congruential generator of java.util.Random.
+		 */
+		JDK
+		{
+			@Override
+			public RandomSource create(long seed){
+				return new JdkRandomSource(new Random(seed));
+			}
+		};
+
+		/**
+		 * @param seed initial seed.
+		 * @return New generator of this kind.
+		 */
+		public abstract RandomSource create(long seed);
+	}
+
+	/**
+	 * @return Next 64 random bits.
+	 */
+	public abstract long nextLong();
+
+	/**
+	 * Restart the generator. Generators with the same seed give the same words.
+	 * @param seed new seed.
+	 */
+	public abstract void setSeed(long seed);
+
+	/**
+	 * @return Next 32 random bits.
+	 */
+	public int nextInt(){
+		return (int)(nextLong() >>> 32);
+	}
+
+	/**
+	 * @return Uniform value from 0 inclusive to 1 exclusive with 53 random bits.
+	 */
+	public double nextDouble(){
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+}
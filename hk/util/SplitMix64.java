@@ -0,0 +1,33 @@
+package hk.util;
+
+/**
+ * SplitMix64 generator: the Weyl sequence with the golden ratio step
+ * passed through the 64-bit finalizer. Words are the same as ones of java.util.SplittableRandom
+ * with the same seed, but the generator is reseeded for each sample without allocation.
+ */
+public class SplitMix64 extends RandomSource
+{
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long state;
+
+	public SplitMix64(long seed)
+	{
+		this.state = seed;
+	}
+
+	@Override
+	public long nextLong()
+	{
+		long z = (state += GOLDEN_GAMMA);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		this.state = seed;
+	}
+}
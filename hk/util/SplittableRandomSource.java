@@ -0,0 +1,40 @@
+package hk.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * Adapter of java.util.SplittableRandom. Values are the same as ones of the generator with the same seed.
+ * The generator can't be reseeded, so the new seed creates the new generator.
+ */
+public class SplittableRandomSource extends RandomSource
+{
+	private SplittableRandom gen;
+
+	/**
+	 * @param seed initial seed.
+	 */
+	public SplittableRandomSource(long seed)
+	{
+		this.gen = new SplittableRandom(seed);
+	}
+
+	@Override
+	public long nextLong(){
+		return gen.nextLong();
+	}
+
+	@Override
+	public int nextInt(){
+		return gen.nextInt();
+	}
+
+	@Override
+	public double nextDouble(){
+		return gen.nextDouble();
+	}
+
+	@Override
+	public void setSeed(long seed){
+		gen = new SplittableRandom(seed);
+	}
+}
@@ -0,0 +1,189 @@
+package hk.util;
+
+import hk.RowSource;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Source of rows from the text lattice. Rows are separated by line ends or semicolons,
+ * values are separated by commas, non-zero values are occupied sites. Commas at the end of the row are ignored.
+ * Characters are scanned once from the buffer of the reader.
+ */
+public class TextRowSource implements RowSource, Closeable
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0, limit = 0;
+	private int line = 1, column = 0;
+	private boolean isNewLine = false;
+	private final int cols;
+	private long[] rowBits;
+	private boolean hasFirstRow;
+
+	/**
+	 * The first row is read to know the count of columns.
+	 * @param reader text of the lattice.
+	 * @throws IOException if the first row can't be read.
+	 * @throws LatticeFormatException if the first row is malformed or absent.
+	 */
+	public TextRowSource(Reader reader) throws IOException
+	{
+		this.reader = reader;
+		rowBits = new long[1];
+		int count = parseRow(-1);
+		if(count < 0) throw new LatticeFormatException("Empty lattice.", line, column);
+		cols = count;
+		rowBits = Arrays.copyOf(rowBits, (cols + 63) >>> 6);
+		hasFirstRow = true;
+	}
+
+	@Override
+	public int getCols(){
+		return cols;
+	}
+
+	@Override
+	public boolean nextRow(long[] row) throws IOException
+	{
+		if(hasFirstRow)
+		{
+			hasFirstRow = false;
+		}
+		else
+		{
+			Arrays.fill(rowBits, 0L);
+			if(parseRow(cols) < 0) return false;
+		}
+		System.arraycopy(rowBits, 0, row, 0, rowBits.length);
+		return true;
+	}
+
+	/**
+	 * @return Line of the last read character.
+	 */
+	public int getLine(){
+		return line;
+	}
+
+	/**
+	 * Read the row into the row bits. Empty rows are skipped.
+	 * @param expected count of values in the row or -1, if it is unknown.
+	 * @return Count of values or -1 at the end of the text.
+	 */
+	private int parseRow(int expected) throws IOException
+	{
+		int count = 0, c;
+		boolean hasDigits = false, isClosed = false, hasSign = false, isOccupied = false;
+		boolean hasEmptyValue = false;
+
+		while(true)
+		{
+			// Next character
+			if(position == limit)
+			{
+				limit = reader.read(buffer, 0, buffer.length);
+				position = 0;
+				if(limit <= 0)
+				{
+					limit = 0;
+					c = -1;
+				}
+				else
+				{
+					c = buffer[position++];
+				}
+			}
+			else
+			{
+				c = buffer[position++];
+			}
+			if(c >= 0)
+			{
+				if(isNewLine)
+				{
+					++line;
+					column = 0;
+				}
+				++column;
+				isNewLine = c == '\n';
+			}
+
+			if(c >= '0' && c <= '9')
+			{
+				if(isClosed) throw new LatticeFormatException("Missing comma.", line, column);
+				hasDigits = true;
+				isOccupied |= c != '0';
+			}
+			else if(c == ',' || c == '\n' || c == ';' || c < 0)
+			{
+				boolean isEndOfRow = c != ',';
+				if(isEndOfRow && count == 0 && !hasDigits && !hasSign)
+				{
+					// Skip empty row
+					if(c < 0) return -1;
+					continue;
+				}
+				if(!hasDigits)
+				{
+					// Empty values are allowed only at the end of the row
+					if(hasSign || count == 0) throw new LatticeFormatException("Missing value.", line, column);
+					hasEmptyValue = true;
+					if(!isEndOfRow) continue;
+					return checkRow(count, expected);
+				}
+				if(hasEmptyValue) throw new LatticeFormatException("Missing value.", line, column);
+
+				// Store the value
+				if(expected >= 0 && count >= expected)
+				{
+					throw new LatticeFormatException("Row is longer than " + expected + " values.", line, column);
+				}
+				if((count >>> 6) >= rowBits.length)
+				{
+					rowBits = Arrays.copyOf(rowBits, 2 * rowBits.length);
+				}
+				if(isOccupied) rowBits[count >>> 6] |= 1L << count;
+				++count;
+				hasDigits = isClosed = hasSign = isOccupied = false;
+
+				if(isEndOfRow) return checkRow(count, expected);
+			}
+			else if(c == ' ' || c == '\t' || c == '\r')
+			{
+				isClosed = hasDigits;
+			}
+			else if(c == '-' && !hasDigits && !hasSign)
+			{
+				hasSign = true;
+			}
+			else
+			{
+				throw new LatticeFormatException("Unexpected character '" + (char)c + "'.", line, column);
+			}
+		}
+	}
+
+	/**
+	 * @param count count of values in the row.
+	 * @param expected count of values in the row or -1, if it is unknown.
+	 * @return Count of values.
+	 */
+	private int checkRow(int count, int expected)
+	{
+		if(expected >= 0 && count != expected)
+		{
+			throw new LatticeFormatException("Row has " + count + " values instead of " + expected + ".",
+					line, column);
+		}
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+}
@@ -0,0 +1,41 @@
+package hk.util;
+
+/**
+ * Xoshiro256++ generator by Blackman and Vigna.
+ * The state is initialized by SplitMix64 from the seed, so it's never zero.
+ */
+public class Xoshiro256PlusPlus extends RandomSource
+{
+	private long s0, s1, s2, s3;
+
+	public Xoshiro256PlusPlus(long seed)
+	{
+		setSeed(seed);
+	}
+
+	@Override
+	public long nextLong()
+	{
+		final long result = Long.rotateLeft(s0 + s3, 23) + s0;
+		final long t = s1 << 17;
+
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+
+		return result;
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		SplitMix64 init = new SplitMix64(seed);
+		s0 = init.nextLong();
+		s1 = init.nextLong();
+		s2 = init.nextLong();
+		s3 = init.nextLong();
+	}
+}
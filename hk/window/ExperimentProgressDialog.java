@@ -0,0 +1,115 @@
+package hk.window;
+
+import hk.experiment.ExperimentOnPercolation;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Progress of the running experiment: count of finished samples and lattices per second.
+ * The experiment is cancelled by the button, finished samples are kept.
+ */
+public class ExperimentProgressDialog extends JDialog
+{
+	/**
+	 * Period of reading counters of the experiment in milliseconds.
+	 */
+	private static final int REFRESH_PERIOD = 250;
+
+	private final ExperimentOnPercolation experiment;
+	private final JProgressBar progressBar;
+	private final JLabel throughputLabel;
+	private final JButton buttonCancel;
+	private final Timer timer;
+	private long lastTime;
+	private long lastLattices = 0;
+
+	public ExperimentProgressDialog(Frame owner, ExperimentOnPercolation experiment)
+	{
+		super(owner, "Running an experiment...", false);
+		this.experiment = experiment;
+
+		progressBar = new JProgressBar(0, experiment.getCountOfExperiments());
+		progressBar.setStringPainted(true);
+		throughputLabel = new JLabel(" ");
+		buttonCancel = new JButton("Cancel");
+
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+		buttons.add(buttonCancel);
+
+		JPanel contentPane = new JPanel(new BorderLayout(0, 10));
+		contentPane.setBorder(new EmptyBorder(10, 10, 10, 10));
+		contentPane.add(progressBar, BorderLayout.NORTH);
+		contentPane.add(throughputLabel, BorderLayout.CENTER);
+		contentPane.add(buttons, BorderLayout.SOUTH);
+		setContentPane(contentPane);
+		setResizable(false);
+
+		buttonCancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e){onCancel();}
+		});
+
+		// call onCancel() when cross is clicked
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e){
+				onCancel();
+			}
+		});
+
+		timer = new Timer(REFRESH_PERIOD, new ActionListener() {
+			public void actionPerformed(ActionEvent e){refresh();}
+		});
+
+		refresh();
+		setMinimumSize(new Dimension(360, 0));
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Show the dialog and start reading the progress.
+	 */
+	public void start()
+	{
+		lastTime = System.nanoTime();
+		lastLattices = experiment.getCompletedLattices();
+		timer.start();
+		setVisible(true);
+	}
+
+	/**
+	 * Stop reading the progress and close the dialog.
+	 */
+	public void finish()
+	{
+		timer.stop();
+		dispose();
+	}
+
+	private void refresh()
+	{
+		int samples = experiment.getCompletedSamples();
+		progressBar.setValue(samples);
+		progressBar.setString(samples + " / " + experiment.getCountOfExperiments() + " samples");
+
+		// Throughput since the previous refresh
+		long time = System.nanoTime(), lattices = experiment.getCompletedLattices();
+		if(time > lastTime && timer.isRunning())
+		{
+			double rate = (lattices - lastLattices) * 1e9 / (time - lastTime);
+			throughputLabel.setText(String.format("%.1f lattices per second", rate));
+		}
+		lastTime = time;
+		lastLattices = lattices;
+	}
+
+	private void onCancel()
+	{
+		experiment.cancel();
+		buttonCancel.setEnabled(false);
+		buttonCancel.setText("Cancelling...");
+	}
+}
@@ -9,6 +9,7 @@ import javax.swing.text.Document;
 import java.awt.event.*;
 import java.awt.*;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class GenerateLatticeDialog extends JDialog {
 	private JPanel contentPane;
@@ -69,22 +70,20 @@ public class GenerateLatticeDialog extends JDialog {
 			int cols = (int)convert(doc);
 
 			doc = randomSeedField.getDocument();
-			Random gen = (doc.getLength() > 0) ? new Random((int)convert(doc)) : new Random();
+			long seed = (doc.getLength() > 0) ? (long)convert(doc) : new Random().nextLong();
 
 			doc = chanceField.getDocument();
 			double chance = convert(doc);
 
-			// Generate random array
-			Cell[][] cells = new Cell[rows][cols];
-
-			for(int i = 0 ; i < rows ; i++){
-				for(int j = 0 ; j < cols ; j++){
-					cells[i][j] = new Cell((gen.nextDouble() < chance) ? 1 : 0);
-				}
+			// Generate strips of the lattice in parallel, sites are hashed from the seed
+			lattice = new Lattice();
+			ForkJoinPool pool = new ForkJoinPool();
+			try{
+				lattice.generateNewLattice(new HashedField(rows, cols, seed), chance, pool);
+			}
+			finally{
+				pool.shutdown();
 			}
-
-			// Now wrap it into the lattice
-			lattice = new Lattice(cells);
 
 			// Leave the dialog
 			dispose();
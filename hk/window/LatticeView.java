@@ -0,0 +1,394 @@
+package hk.window;
+
+import hk.Lattice;
+import hk.cell.BitLattice;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Image of the lattice, where each cluster has its own color.
+ * The image is split into tiles, only tiles of the visible area are rendered.
+ * Tiles are rendered by background threads and cached.
+ * The wheel and keys + and - zoom the image, dragging by the mouse pans it.
+ */
+public class LatticeView extends JComponent implements Scrollable
+{
+	private static final int TILE_SIZE = 256;
+	private static final int CACHE_SIZE = 256;
+	/**
+	 * Zoom is the power of two of pixels per site.
+	 */
+	private static final int MIN_ZOOM = -8, MAX_ZOOM = 5;
+	/**
+	 * Size of the image in pixels, to which the lattice is fitted at first.
+	 */
+	private static final int INITIAL_SIZE = 1024;
+	private static final int EMPTY_COLOR = 0xFFFFFF, OCCUPIED_COLOR = 0x404040, OUTSIDE_COLOR = 0xC0C0C0;
+
+	private final ExecutorService renderer;
+	private final Map<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest){
+			return size() > CACHE_SIZE;
+		}
+	};
+	private final Set<Long> pending = new HashSet<>();
+
+	private BitLattice occupancy;
+	private int[] labels;
+	private int zoom = 0;
+	/**
+	 * Changed with the lattice and the zoom, tiles of old generations are dropped.
+	 */
+	private volatile int generation = 0;
+	private Point dragStart;
+
+	public LatticeView()
+	{
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		renderer = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "Lattice renderer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		setOpaque(true);
+		setToolTipText("");
+
+		MouseAdapter mouse = new MouseAdapter()
+		{
+			@Override
+			public void mousePressed(MouseEvent e){
+				dragStart = e.getLocationOnScreen();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e){
+				pan(e.getLocationOnScreen());
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e){
+				setZoom(zoom - e.getWheelRotation(), e.getPoint());
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('+'), "zoomIn");
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('='), "zoomIn");
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('-'), "zoomOut");
+		getActionMap().put("zoomIn", new AbstractAction()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e){
+				setZoom(zoom + 1, getVisibleCenter());
+			}
+		});
+		getActionMap().put("zoomOut", new AbstractAction()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e){
+				setZoom(zoom - 1, getVisibleCenter());
+			}
+		});
+	}
+
+	/**
+	 * Show the lattice. Clusters are shown, if they are found, otherwise occupied sites are shown.
+	 * The view keeps copies, which renderers read, so the lattice may be changed while it's shown;
+	 * call this method again to show changes. The zoom is kept, if sizes of the lattice are the same.
+	 * @param lattice shown lattice.
+	 */
+	public void setLattice(Lattice lattice)
+	{
+		BitLattice shown = lattice.getInitialLattice().copy();
+		labels = lattice.isComputed() ? lattice.getResultLattice().copy().getValues() : null;
+		boolean isResized = occupancy == null ||
+				occupancy.getRows() != shown.getRows() || occupancy.getCols() != shown.getCols();
+		occupancy = shown;
+
+		// Fit the new lattice to the initial size
+		if(isResized)
+		{
+			int size = Math.max(occupancy.getRows(), occupancy.getCols());
+			zoom = 0;
+			while(zoom > MIN_ZOOM && scale(size, zoom) > INITIAL_SIZE) --zoom;
+			while(zoom < MAX_ZOOM && scale(size, zoom + 1) <= INITIAL_SIZE) ++zoom;
+		}
+
+		invalidateTiles();
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Stop background rendering. The view can't be used after it.
+	 */
+	public void dispose()
+	{
+		renderer.shutdownNow();
+	}
+
+	public int getZoom(){
+		return zoom;
+	}
+
+	/**
+	 * Change the scale, the site under the anchor point stays in place.
+	 * @param zoom power of two of pixels per site.
+	 * @param anchor point of the view.
+	 */
+	public void setZoom(int zoom, Point anchor)
+	{
+		zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+		if(zoom == this.zoom || occupancy == null) return;
+
+		int shift = zoom - this.zoom;
+		this.zoom = zoom;
+		invalidateTiles();
+
+		Container parent = getParent();
+		if(parent instanceof JViewport)
+		{
+			JViewport viewport = (JViewport)parent;
+			Point position = viewport.getViewPosition();
+			long x = scale(anchor.x, shift), y = scale(anchor.y, shift);
+			setSize(getPreferredSize());
+			viewport.setViewPosition(new Point(
+					(int)Math.max(0, x - (anchor.x - position.x)),
+					(int)Math.max(0, y - (anchor.y - position.y))));
+		}
+		revalidate();
+		repaint();
+	}
+
+	private static long scale(long value, int shift)
+	{
+		return (shift >= 0) ? value << shift : value >> -shift;
+	}
+
+	private Point getVisibleCenter()
+	{
+		Rectangle visible = getVisibleRect();
+		return new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+	}
+
+	private void pan(Point location)
+	{
+		Container parent = getParent();
+		if(dragStart == null || !(parent instanceof JViewport)) return;
+
+		JViewport viewport = (JViewport)parent;
+		Point position = viewport.getViewPosition();
+		Dimension extent = viewport.getExtentSize();
+		int x = position.x - (location.x - dragStart.x), y = position.y - (location.y - dragStart.y);
+		x = Math.max(0, Math.min(x, getWidth() - extent.width));
+		y = Math.max(0, Math.min(y, getHeight() - extent.height));
+		viewport.setViewPosition(new Point(x, y));
+		dragStart = location;
+	}
+
+	private void invalidateTiles()
+	{
+		++generation;
+		tiles.clear();
+		pending.clear();
+	}
+
+	/**
+	 * @param sites count of sites.
+	 * @return Count of pixels, which is limited by the size of the component.
+	 */
+	private int toPixels(int sites)
+	{
+		// Partially shown sites are rounded up
+		long pixels = (zoom >= 0) ? scale(sites, zoom) : scale(sites + (1L << -zoom) - 1, zoom);
+		return (int)Math.min(Integer.MAX_VALUE / 2, pixels);
+	}
+
+	@Override
+	public Dimension getPreferredSize()
+	{
+		if(occupancy == null) return new Dimension(0, 0);
+		return new Dimension(toPixels(occupancy.getCols()), toPixels(occupancy.getRows()));
+	}
+
+	@Override
+	protected void paintComponent(Graphics g)
+	{
+		Rectangle clip = g.getClipBounds();
+		g.setColor(new Color(OUTSIDE_COLOR));
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		if(occupancy == null) return;
+
+		Dimension size = getPreferredSize();
+		int lastRow = Math.min(clip.y + clip.height, size.height) - 1;
+		int lastCol = Math.min(clip.x + clip.width, size.width) - 1;
+
+		for(int ty = clip.y / TILE_SIZE ; ty <= lastRow / TILE_SIZE ; ty++)
+		{
+			for(int tx = clip.x / TILE_SIZE ; tx <= lastCol / TILE_SIZE ; tx++)
+			{
+				long key = (long)ty << 32 | tx;
+				BufferedImage tile = tiles.get(key);
+				if(tile != null)
+				{
+					g.drawImage(tile, tx * TILE_SIZE, ty * TILE_SIZE, null);
+				}
+				else
+				{
+					requestTile(key, tx, ty);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Render the tile in background and repaint it after that.
+	 */
+	private void requestTile(final long key, final int tx, final int ty)
+	{
+		if(!pending.add(key)) return;
+
+		// Rendering reads the state of the current generation
+		final int tileGeneration = generation;
+		final BitLattice occupancy = this.occupancy;
+		final int[] labels = this.labels;
+		final int zoom = this.zoom;
+
+		renderer.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(tileGeneration != generation) return;
+				final BufferedImage tile = renderTile(occupancy, labels, zoom, tx, ty);
+
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if(tileGeneration != generation) return;
+						pending.remove(key);
+						tiles.put(key, tile);
+						repaint(tx * TILE_SIZE, ty * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+					}
+				});
+			}
+		});
+	}
+
+	private static BufferedImage renderTile(BitLattice occupancy, int[] labels, int zoom, int tx, int ty)
+	{
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		final int rows = occupancy.getRows(), cols = occupancy.getCols();
+		int offset, label;
+		long x, y;
+
+		for(int py = 0 ; py < TILE_SIZE ; py++)
+		{
+			offset = py * TILE_SIZE;
+			x = scale((long)ty * TILE_SIZE + py, -zoom);
+			if(x >= rows)
+			{
+				Arrays.fill(pixels, offset, pixels.length, OUTSIDE_COLOR);
+				break;
+			}
+
+			for(int px = 0 ; px < TILE_SIZE ; px++)
+			{
+				y = scale((long)tx * TILE_SIZE + px, -zoom);
+				if(y >= cols)
+				{
+					Arrays.fill(pixels, offset + px, offset + TILE_SIZE, OUTSIDE_COLOR);
+					break;
+				}
+
+				if(labels != null)
+				{
+					label = labels[(int)x * cols + (int)y];
+					pixels[offset + px] = (label == 0) ? EMPTY_COLOR : getColor(label);
+				}
+				else
+				{
+					pixels[offset + px] = occupancy.get((int)x, (int)y) ? OCCUPIED_COLOR : EMPTY_COLOR;
+				}
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @param label label of the cluster.
+	 * @return Color of the cluster, which differs from colors of empty sites and of near labels.
+	 */
+	private static int getColor(int label)
+	{
+		int hash = label * 0x9E3779B9;
+		hash ^= hash >>> 15;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return hash & 0xDFDFDF;
+	}
+
+	@Override
+	public String getToolTipText(MouseEvent e)
+	{
+		if(occupancy == null) return null;
+
+		long x = scale(e.getY(), -zoom), y = scale(e.getX(), -zoom);
+		if(x >= occupancy.getRows() || y >= occupancy.getCols()) return null;
+
+		String text = "Site (" + x + ", " + y + ")";
+		if(labels != null)
+		{
+			int label = labels[(int)x * occupancy.getCols() + (int)y];
+			text += (label == 0) ? ": empty" : ": cluster " + label;
+		}
+		return text;
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize()
+	{
+		Dimension size = getPreferredSize();
+		return new Dimension(Math.min(size.width, INITIAL_SIZE), Math.min(size.height, INITIAL_SIZE));
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+	{
+		return Math.max(16, 1 << Math.max(0, zoom));
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+	{
+		return (orientation == SwingConstants.VERTICAL) ? visibleRect.height : visibleRect.width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth(){
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight(){
+		return false;
+	}
+}
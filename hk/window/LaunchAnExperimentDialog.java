@@ -1,14 +1,12 @@
 package hk.window;
 
 import hk.experiment.ExperimentOnPercolation;
-import hk.experiment.Statistic;
 import hk.util.Pair;
 
 import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.*;
 
 public class LaunchAnExperimentDialog extends JDialog {
 	private JPanel contentPane;
@@ -20,8 +18,7 @@ public class LaunchAnExperimentDialog extends JDialog {
 	private JTextField maxProbabilityField;
 	private JTextField probabilityIncrementField;
 	private JTextField maxExperimentCountField;
-	private Statistic statistic;
-	private Long timeElapsed = null;
+	private ExperimentOnPercolation experiment = null;
 
 	public LaunchAnExperimentDialog(Toolkit toolkit){
 		setContentPane(contentPane);
@@ -93,19 +90,14 @@ public class LaunchAnExperimentDialog extends JDialog {
 				int countOfExperiments = (int)convert(doc);
 
 				experiment.setCountOfExperiments(countOfExperiments);
+				experiment.setThreads(Runtime.getRuntime().availableProcessors());
 			}
 
+			// The experiment is run by the caller
+			this.experiment = experiment;
+
 			// Leave the dialog
 			dispose();
-
-			// Run experiments
-			Calendar calendar = Calendar.getInstance();
-			timeElapsed = -calendar.getTimeInMillis();
-			experiment.run();
-			calendar = Calendar.getInstance();
-			timeElapsed += calendar.getTimeInMillis();
-
-			statistic = experiment.getStatistic();
 		}
 		catch(BadLocationException e){
 			JOptionPane.showMessageDialog(this, "Access violation: attempt to read outside of the text.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -125,11 +117,10 @@ public class LaunchAnExperimentDialog extends JDialog {
 		dispose();
 	}
 
-	public Long getTimeElapsed(){
-		return timeElapsed;
-	}
-
-	public Statistic getStatistic(){
-		return statistic;
+	/**
+	 * @return Prepared experiment or null, if the dialog is cancelled.
+	 */
+	public ExperimentOnPercolation getExperiment(){
+		return experiment;
 	}
 }
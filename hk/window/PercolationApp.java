@@ -1,15 +1,27 @@
 package hk.window;
 
 import hk.Lattice;
+import hk.cell.BitLattice;
+import hk.cell.CellGrid;
+import hk.experiment.ExperimentOnPercolation;
+import hk.util.BinaryLatticeFormat;
+import hk.util.LatticeFormatException;
 import hk.util.LatticeParser;
+import hk.util.LatticePrinter;
 
 import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
-import java.util.regex.Pattern;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 public class PercolationApp extends JFrame
 {
@@ -19,6 +31,10 @@ public class PercolationApp extends JFrame
 	private Document currentDocument;
 	private JFileChooser fileDialog;
 	private Lattice lattice;
+	/**
+	 * Open windows with views of the lattice.
+	 */
+	private final Map<LatticeView, JDialog> viewers = new LinkedHashMap<>();
 
 	public PercolationApp()
 	{
@@ -70,74 +86,299 @@ public class PercolationApp extends JFrame
 		GenerateLatticeDialog dlg = new GenerateLatticeDialog(toolkit);
 		dlg.setVisible(true);
 		lattice = dlg.getLattice();
+		refreshViewers();
 	}
 
 	/**
-	 * Load lattice from file.
+	 * Load lattice from file. The file is loaded in background,
+	 * progress is shown in the monitor, which allows to cancel the loading.
+	 * The monitor is owned by the event dispatch thread, the loader only reports the percentage.
 	 * @param path file destination.
 	 */
-	private void loadFile(String path)
+	private void loadFile(final String path)
 	{
-		try
+		final File file = new File(path);
+		final ProgressMonitor monitor = new ProgressMonitor(this, "Loading " + file.getName() + "...", null, 0, 100);
+		final SwingWorker<Lattice, Void> loader = new SwingWorker<Lattice, Void>()
 		{
-			// Load data from file
-			BufferedReader reader = new BufferedReader(new FileReader(path));
-			StringBuffer file = new StringBuffer();
-			String line, regex = "^[,\\d\\s]";
-			while(reader.ready())
+			/**
+			 * @param loaded,total loaded part of the file and the whole file in any units.
+			 */
+			private void report(long loaded, long total)
+			{
+				if(total > 0) setProgress((int)Math.min(100, 100 * loaded / total));
+			}
+
+			@Override
+			protected Lattice doInBackground() throws IOException
 			{
-				line = reader.readLine();
-				if(Pattern.matches(regex, line))
+				if(BinaryLatticeFormat.isBinary(file))
+				{
+					// Map binary lattice, the interrupted loading is stopped
+					return new Lattice(BinaryLatticeFormat.read(file, new BinaryLatticeFormat.Progress()
+					{
+						@Override
+						public void update(long loaded, long rows){
+							report(loaded, rows);
+						}
+					}));
+				}
+
+				// Parse text lattice while reading the file
+				final long length = file.length();
+				InputStream in = new FilterInputStream(new FileInputStream(file))
+				{
+					private long position = 0;
+
+					@Override
+					public int read() throws IOException
+					{
+						byte[] b = new byte[1];
+						return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException
+					{
+						if(isCancelled()) throw new InterruptedIOException();
+						int count = super.read(b, off, len);
+						if(count > 0) report(position += count, length);
+						return count;
+					}
+				};
+				try(Reader reader = new InputStreamReader(in))
 				{
-					// Prevent loading from that file
-					throw new IllegalArgumentException("Incorrect file.");
+					return LatticeParser.parse(reader);
 				}
-				file.append(line).append(";");
 			}
 
-			// Create lattice
-			lattice = LatticeParser.parse(file);
+			@Override
+			protected void done()
+			{
+				monitor.close();
+				if(isCancelled()) return;
+
+				try
+				{
+					lattice = get();
+					refreshViewers();
+
+					// Print message
+					writeToTextArea("File has loaded successfully.");
+				}
+				catch(ExecutionException e)
+				{
+					showLoadingError(e.getCause());
+					return;
+				}
+				catch(InterruptedException | BadLocationException e)
+				{
+					e.printStackTrace();
+					return;
+				}
+
+				// Set the new document
+				currentDocument = textArea.getDocument();
+
+				// Set the title of the application
+				title.setTitle(path);
+				setTitle(title.getTitle());
+			}
+		};
+
+		loader.addPropertyChangeListener(new PropertyChangeListener()
+		{
+			@Override
+			public void propertyChange(PropertyChangeEvent e)
+			{
+				if("progress".equals(e.getPropertyName())) monitor.setProgress((Integer)e.getNewValue());
+			}
+		});
+
+		// The monitor is polled, so the loading is cancelled even if the progress doesn't change
+		final Timer canceller = new Timer(100, null);
+		canceller.addActionListener(new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				if(loader.isDone())
+				{
+					canceller.stop();
+				}
+				else if(monitor.isCanceled())
+				{
+					canceller.stop();
+					loader.cancel(true);
+				}
+			}
+		});
+		canceller.start();
+		loader.execute();
+	}
 
-			// Print message
-			writeToTextArea("File has loaded successfully.");
+	/**
+	 * Write the lattice to the file in background. Clusters are written, if they are found.
+	 * Files with .bin extension are written in binary format, other ones in text format.
+	 * @param file destination.
+	 */
+	private void exportFile(final File file)
+	{
+		final boolean isLabeled = lattice.isComputed();
+		final boolean isBinary = file.getName().toLowerCase(Locale.ROOT).endsWith(".bin");
+
+		// The copy is written, so the lattice may be changed or clusterized during the export
+		final CellGrid labels = isLabeled ? lattice.getResultLattice().copy() : null;
+		final BitLattice occupancy = isLabeled ? null : lattice.getInitialLattice().copy();
+
+		SwingWorker<Void, Void> exporter = new SwingWorker<Void, Void>()
+		{
+			@Override
+			protected Void doInBackground() throws IOException
+			{
+				if(isBinary)
+				{
+					try(OutputStream out = new FileOutputStream(file))
+					{
+						if(isLabeled)
+						{
+							BinaryLatticeFormat.write(labels, out);
+						}
+						else
+						{
+							BinaryLatticeFormat.write(occupancy, out);
+						}
+					}
+				}
+				else
+				{
+					try(Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))
+					{
+						LatticePrinter printer = new LatticePrinter(writer);
+						if(isLabeled)
+						{
+							printer.print(labels);
+						}
+						else
+						{
+							printer.print(occupancy);
+						}
+					}
+				}
+				return null;
+			}
+
+			@Override
+			protected void done()
+			{
+				try
+				{
+					get();
+					writeToTextArea((isLabeled ? "Result lattice" : "Initial lattice") +
+							" is exported to " + file.getPath() + ".");
+				}
+				catch(ExecutionException e)
+				{
+					JOptionPane.showMessageDialog(PercolationApp.this, "Error has occur while exporting lattice.",
+							"Error", JOptionPane.ERROR_MESSAGE);
+					e.getCause().printStackTrace();
+				}
+				catch(InterruptedException | BadLocationException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		};
+		exporter.execute();
+	}
+
+	private void showLoadingError(Throwable cause)
+	{
+		if(cause instanceof InterruptedIOException)
+		{
+			// Loading is cancelled by the user
+			return;
+		}
+		if(cause instanceof LatticeFormatException)
+		{
+			JOptionPane.showMessageDialog(this, "Attempt to load wrong/corrupted file." +
+					System.lineSeparator() + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
 		}
-		catch(BadLocationException | IOException e)
+		else if(cause instanceof IllegalArgumentException)
 		{
-			JOptionPane.showMessageDialog(null, "Error has occur while loading lattice.",
+			JOptionPane.showMessageDialog(this, "Attempt to load wrong/corrupted file.",
 					"Error", JOptionPane.ERROR_MESSAGE);
-			return;
 		}
-		catch(IllegalArgumentException e)
+		else
 		{
-			JOptionPane.showMessageDialog(null, "Attempt to load wrong/corrupted file.",
+			JOptionPane.showMessageDialog(this, "Error has occur while loading lattice.",
 					"Error", JOptionPane.ERROR_MESSAGE);
-			return;
 		}
-
-		// Set the new document
-		currentDocument = textArea.getDocument();
-
-		// Set the title of the application
-		title.setTitle(path);
-		setTitle(title.getTitle());
 	}
 
+	/**
+	 * Run the experiment in background. Progress is shown in the dialog,
+	 * which allows to cancel the experiment and see results of finished samples.
+	 */
 	private void launchAnExperiment()
 	{
 		LaunchAnExperimentDialog dlg = new LaunchAnExperimentDialog(toolkit);
 		dlg.setVisible(true);
-		try
+		final ExperimentOnPercolation experiment = dlg.getExperiment();
+		if(experiment == null) return;
+
+		final ExperimentProgressDialog progress = new ExperimentProgressDialog(this, experiment);
+		final long startTime = Calendar.getInstance().getTimeInMillis();
+		SwingWorker<Void, Void> runner = new SwingWorker<Void, Void>()
 		{
-			Long elapsed = dlg.getTimeElapsed();
-			if(elapsed != null)
+			@Override
+			protected Void doInBackground()
 			{
-				writeToTextArea(getTimeElapsedString(elapsed) + dlg.getStatistic().toString());
+				experiment.run();
+				return null;
 			}
-		}
-		catch(BadLocationException ex)
-		{
-			ex.printStackTrace();
-		}
+
+			@Override
+			protected void done()
+			{
+				progress.finish();
+				long elapsed = Calendar.getInstance().getTimeInMillis() - startTime;
+				try
+				{
+					get();
+
+					String text = getTimeElapsedString(elapsed);
+					if(experiment.isCancelled())
+					{
+						text += "Experiment is cancelled after " + experiment.getCompletedSamples() +
+								" of " + experiment.getCountOfExperiments() + " samples." + System.lineSeparator();
+					}
+					else if(experiment.getMergedSamples() < experiment.getCountOfExperiments())
+					{
+						text += "Experiment is stopped after " + experiment.getMergedSamples() +
+								" of " + experiment.getCountOfExperiments() + " samples." + System.lineSeparator();
+					}
+					text += experiment.getStatistic().toString();
+					if(experiment.getClusterProfile() != null)
+					{
+						text += experiment.getClusterProfile().toString();
+					}
+					writeToTextArea(text);
+				}
+				catch(ExecutionException e)
+				{
+					JOptionPane.showMessageDialog(PercolationApp.this, "Error has occur while running the experiment.",
+							"Error", JOptionPane.ERROR_MESSAGE);
+					e.getCause().printStackTrace();
+				}
+				catch(InterruptedException | BadLocationException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		};
+		runner.execute();
+		progress.start();
 	}
 
 	protected final void setSystemLookAndFeel()
@@ -164,6 +405,7 @@ public class PercolationApp extends JFrame
 		// Initialise items
 		JMenuItem newDoc = new JMenuItem("New");
 		JMenuItem openDoc = new JMenuItem("Open");
+		JMenuItem exportDoc = new JMenuItem("Export...");
 		JMenuItem launchExperiment = new JMenuItem("Launch an experiment...");
 		JMenuItem exit = new JMenuItem("Exit");
 
@@ -190,6 +432,26 @@ public class PercolationApp extends JFrame
 			}
 		});
 
+		exportDoc.addActionListener(new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				if(lattice == null)
+				{
+					JOptionPane.showMessageDialog((JComponent)e.getSource(),
+							"Lattice isn't initialised.", "Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+
+				if(fileDialog.showSaveDialog((Component)e.getSource()) ==
+						JFileChooser.APPROVE_OPTION)
+				{
+					exportFile(fileDialog.getSelectedFile());
+				}
+			}
+		});
+
 		launchExperiment.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e){
@@ -209,6 +471,7 @@ public class PercolationApp extends JFrame
 		// Add items to the File menu
 		fileMenu.add(newDoc);
 		fileMenu.add(openDoc);
+		fileMenu.add(exportDoc);
 		fileMenu.addSeparator();
 		fileMenu.add(launchExperiment);
 		fileMenu.addSeparator();
@@ -222,7 +485,7 @@ public class PercolationApp extends JFrame
 		// Construct the menu object
 		final JMenu editMenu = new JMenu("Edit");
 		// Initialise items
-		JMenuItem findClusters = new JMenuItem("Find clusters");
+		final JMenuItem findClusters = new JMenuItem("Find clusters");
 		JMenuItem showResultLattice = new JMenuItem("Show result lattice");
 
 		// Add listeners to the menu items
@@ -236,21 +499,7 @@ public class PercolationApp extends JFrame
 					return;
 				}
 
-				// Start the algorithm
-				Calendar calendar = Calendar.getInstance();
-				long timeElapsed = -calendar.getTimeInMillis();
-				lattice.clusterize();
-				calendar = Calendar.getInstance();
-				timeElapsed += calendar.getTimeInMillis();
-
-				try
-				{
-					writeToTextArea(getTimeElapsedString(timeElapsed));
-				}
-				catch(BadLocationException ex)
-				{
-					ex.printStackTrace();
-				}
+				findClusters(findClusters);
 			}
 		});
 
@@ -265,14 +514,7 @@ public class PercolationApp extends JFrame
 					return;
 				}
 
-				try
-				{
-					writeToTextArea(lattice.toString());
-				}
-				catch(BadLocationException ex)
-				{
-					ex.printStackTrace();
-				}
+				showResultLattice();
 			}
 		});
 
@@ -283,14 +525,114 @@ public class PercolationApp extends JFrame
 		return editMenu;
 	}
 
+	/**
+	 * Show the lattice in the separate window. Clusters are colored, if they are found.
+	 */
+	private void showResultLattice()
+	{
+		final LatticeView view = new LatticeView();
+		view.setLattice(lattice);
+
+		JDialog viewer = new JDialog(this, getViewerTitle(), false);
+		viewer.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		viewer.addWindowListener(new WindowAdapter()
+		{
+			@Override
+			public void windowClosed(WindowEvent e)
+			{
+				viewers.remove(view);
+				view.dispose();
+			}
+		});
+		viewers.put(view, viewer);
+		viewer.add(new JScrollPane(view));
+
+		Dimension dimension = toolkit.getScreenSize();
+		viewer.setSize(dimension.width / 2, dimension.height / 2);
+		viewer.setLocationRelativeTo(this);
+		viewer.setVisible(true);
+	}
+
+	/**
+	 * Find clusters in background. The occupancy is shared with a new lattice,
+	 * which replaces the current one, unless other lattice is loaded meanwhile.
+	 * @param item menu item, which is disabled until clusters are found.
+	 */
+	private void findClusters(final JMenuItem item)
+	{
+		final Lattice source = lattice;
+		item.setEnabled(false);
+		SwingWorker<Lattice, Void> worker = new SwingWorker<Lattice, Void>()
+		{
+			private long timeElapsed;
+
+			@Override
+			protected Lattice doInBackground()
+			{
+				long startTime = System.nanoTime();
+				Lattice result = new Lattice(source.getInitialLattice());
+				result.clusterize();
+				timeElapsed = (System.nanoTime() - startTime) / 1000000L;
+				return result;
+			}
+
+			@Override
+			protected void done()
+			{
+				item.setEnabled(true);
+				try
+				{
+					Lattice result = get();
+					if(lattice != source) return;
+					lattice = result;
+					refreshViewers();
+					writeToTextArea(getTimeElapsedString(timeElapsed));
+				}
+				catch(ExecutionException e)
+				{
+					JOptionPane.showMessageDialog(PercolationApp.this, "Error has occur while finding clusters.",
+							"Error", JOptionPane.ERROR_MESSAGE);
+					e.getCause().printStackTrace();
+				}
+				catch(InterruptedException | BadLocationException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		};
+		worker.execute();
+	}
+
+	/**
+	 * Show the current lattice in open windows, views keep copies of the lattice.
+	 */
+	private void refreshViewers()
+	{
+		if(lattice == null) return;
+		for(Map.Entry<LatticeView, JDialog> viewer : viewers.entrySet())
+		{
+			viewer.getKey().setLattice(lattice);
+			viewer.getValue().setTitle(getViewerTitle());
+		}
+	}
+
+	private String getViewerTitle()
+	{
+		String text = "Result lattice " + lattice.getInitialLattice().getRows() + "x" +
+				lattice.getInitialLattice().getCols();
+		if(lattice.isComputed())
+		{
+			text += ", " + lattice.getClusterCount() + " clusters";
+		}
+		return text;
+	}
+
 	private void writeToTextArea(CharSequence seq) throws BadLocationException
 	{
 		// Erase the content of the document object
 		currentDocument.remove(0, currentDocument.getLength());
-		// Insert new text to the document
+		// Insert new text to the document, the text area shows it
 		currentDocument.insertString(0, seq.toString(), null);
-		// Show the content of the document in the text area
-		textArea.setText(currentDocument.getText(0, currentDocument.getLength()));
 		// Show the caret
 		textArea.getCaret().setVisible(true);
 	}